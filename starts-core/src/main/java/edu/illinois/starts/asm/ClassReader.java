@@ -105,6 +105,17 @@ public class ClassReader {
      */
     public static final int EXPAND_FRAMES = 8;
 
+    /**
+     * The type of CONSTANT_Dynamic constant pool items (Java 11+).
+     */
+    static final int CONDY = 17;
+
+    /**
+     * Number of class file versions after Java 8 whose constant pool can be
+     * parsed (up to Java 25).
+     */
+    static final int MAX_EXTRA_VERSIONS = 17;
+
     /**
      * The class to be parsed. <i>The content of this array must not be
      * modified. This field is intended for {@link Attribute} sub classes, and
@@ -166,8 +177,9 @@ public class ClassReader {
      */
     public ClassReader(final byte[] b, final int off, final int len) {
         this.b = b;
-        // checks the class version
-        if (readShort(off + 6) > Opcodes.V1_8) {
+        // checks the class version; newer class files keep the same constant
+        // pool and header layout, which is all that STARTS reads from them
+        if (readShort(off + 6) > Opcodes.V1_8 + MAX_EXTRA_VERSIONS) {
             throw new IllegalArgumentException();
         }
         // parses the constant pool
@@ -187,6 +199,7 @@ public class ClassReader {
             case ClassWriter.FLOAT:
             case ClassWriter.NAME_TYPE:
             case ClassWriter.INDY:
+            case CONDY:
                 size = 5;
                 break;
             case ClassWriter.LONG:
@@ -62,6 +62,8 @@ public interface StartsConstants {
     String STARTS_AFFECTED_TESTS = "STARTS:AffectedTests: ";
     String JDEPS_CACHE = "jdeps-cache";
     String GRAPH = "graph";
+    // Classes from the standard library whose dependencies we drop when "filterLib" is set
+    String LIB_FILTER = "java.*|sun.*";
 
     String JAR_EXTENSION = ".jar";
     String CLASS_EXTENSION = ".class";
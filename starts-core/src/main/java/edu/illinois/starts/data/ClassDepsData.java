@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.data;
+
+import static java.lang.String.join;
+
+import java.util.Set;
+
+import edu.illinois.starts.constants.StartsConstants;
+
+/**
+ * This class creates objects that represent one row in the class-deps file: a class file from the
+ * previous run together with its outgoing dependency edges, and the time at which the file was scanned.
+ */
+public class ClassDepsData implements StartsConstants {
+    private final String className;
+    private final String url;
+    private long size;
+    private long lastModified;
+    private long scannedAt;
+    private final long checksum;
+    private final Set<String> deps;
+
+    public ClassDepsData(String className, String url, long size, long lastModified, long scannedAt,
+                         long checksum, Set<String> deps) {
+        this.className = className;
+        this.url = url;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.scannedAt = scannedAt;
+        this.checksum = checksum;
+        this.deps = deps;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getScannedAt() {
+        return scannedAt;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public Set<String> getDeps() {
+        return deps;
+    }
+
+    /**
+     * Record new file metadata for a class file whose content did not change.
+     */
+    public void touch(long size, long lastModified, long scannedAt) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.scannedAt = scannedAt;
+    }
+
+    @Override
+    public String toString() {
+        String data = join(WHITE_SPACE, className, url, String.valueOf(size), String.valueOf(lastModified),
+                String.valueOf(scannedAt), String.valueOf(checksum));
+        return deps.isEmpty() ? data : join(WHITE_SPACE, data, join(COMMA, deps));
+    }
+}
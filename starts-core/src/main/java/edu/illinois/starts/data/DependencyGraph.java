@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A directed graph of class dependencies in which every class has a dense int ID. The successors of each
+ * vertex are stored in compressed sparse row (CSR) form: the successors of vertex v are
+ * targets[offsets[v]] to targets[offsets[v + 1] - 1], sorted and without duplicates. Sets of vertices are
+ * BitSets indexed by ID, so traversals allocate no objects per vertex.
+ */
+public class DependencyGraph {
+    private final String[] names;
+    private final Map<String, Integer> ids;
+    private final int[] offsets;
+    private final int[] targets;
+
+    private DependencyGraph(String[] names, Map<String, Integer> ids, int[] offsets, int[] targets) {
+        this.names = names;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    public int getVerticesCount() {
+        return names.length;
+    }
+
+    public int getEdgesCount() {
+        return targets.length;
+    }
+
+    /**
+     * Get the ID of a class.
+     *
+     * @param name The name of the class
+     * @return     The ID of the class, or -1 if it is not in the graph
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    public int getOutDegree(int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+
+    /**
+     * Get the idx-th successor of a vertex, for idx from 0 to getOutDegree(id) - 1.
+     */
+    public int getSuccessor(int id, int idx) {
+        return targets[offsets[id] + idx];
+    }
+
+    /**
+     * Find all the vertices that can be reached from the given vertices, including themselves.
+     *
+     * @param roots The IDs of the vertices from which to start
+     * @return      The IDs of the reachable vertices
+     */
+    public BitSet reachableFrom(BitSet roots) {
+        BitSet reached = (BitSet) roots.clone();
+        int[] stack = new int[Math.max(16, roots.cardinality())];
+        int size = 0;
+        for (int id = roots.nextSetBit(0); id >= 0; id = roots.nextSetBit(id + 1)) {
+            stack[size++] = id;
+        }
+        while (size > 0) {
+            int id = stack[--size];
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                int target = targets[i];
+                if (!reached.get(target)) {
+                    reached.set(target);
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = target;
+                }
+            }
+        }
+        return reached;
+    }
+
+    public BitSet reachableFrom(int root) {
+        BitSet roots = new BitSet(names.length);
+        roots.set(root);
+        return reachableFrom(roots);
+    }
+
+    /**
+     * Compute the strongly connected components of the graph with an iterative version of Tarjan's
+     * algorithm. Components are numbered in the order in which Tarjan's algorithm completes them, which is
+     * a reverse topological order of the condensed graph: every edge goes from a component to a component
+     * with a smaller or equal number.
+     *
+     * @return The component of every vertex
+     */
+    public int[] getComponents() {
+        int verticesCount = names.length;
+        int[] components = new int[verticesCount];
+        int[] index = new int[verticesCount];
+        int[] low = new int[verticesCount];
+        Arrays.fill(index, -1);
+        BitSet onStack = new BitSet(verticesCount);
+        int[] stack = new int[verticesCount];
+        int[] callVertices = new int[verticesCount];
+        int[] callEdges = new int[verticesCount];
+        int stackSize = 0;
+        int counter = 0;
+        int componentsCount = 0;
+        for (int root = 0; root < verticesCount; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            index[root] = counter;
+            low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack.set(root);
+            callVertices[depth] = root;
+            callEdges[depth++] = offsets[root];
+            while (depth > 0) {
+                int vertex = callVertices[depth - 1];
+                if (callEdges[depth - 1] < offsets[vertex + 1]) {
+                    int target = targets[callEdges[depth - 1]++];
+                    if (index[target] < 0) {
+                        index[target] = counter;
+                        low[target] = counter++;
+                        stack[stackSize++] = target;
+                        onStack.set(target);
+                        callVertices[depth] = target;
+                        callEdges[depth++] = offsets[target];
+                    } else if (onStack.get(target)) {
+                        low[vertex] = Math.min(low[vertex], index[target]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (low[vertex] == index[vertex]) {
+                    int member = -1;
+                    while (member != vertex) {
+                        member = stack[--stackSize];
+                        onStack.clear(member);
+                        components[member] = componentsCount;
+                    }
+                    componentsCount++;
+                }
+                if (depth > 0) {
+                    int caller = callVertices[depth - 1];
+                    low[caller] = Math.min(low[caller], low[vertex]);
+                }
+            }
+        }
+        return components;
+    }
+
+    public Set<String> toNames(BitSet vertices) {
+        Set<String> result = new HashSet<>(Math.max(16, vertices.cardinality() * 4 / 3 + 1));
+        for (int id = vertices.nextSetBit(0); id >= 0; id = vertices.nextSetBit(id + 1)) {
+            result.add(names[id]);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the edges of a DependencyGraph; vertices get IDs in the order in which they are first added.
+     */
+    public static class Builder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private int[] sources = new int[1024];
+        private int[] destinations = new int[1024];
+        private int edgesCount;
+
+        public int addVertex(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+
+        public Builder addEdge(String source, String destination) {
+            return addEdge(addVertex(source), addVertex(destination));
+        }
+
+        /**
+         * Add an edge between two vertices, given by the IDs that addVertex returned for them.
+         */
+        public Builder addEdge(int source, int destination) {
+            if (edgesCount == sources.length) {
+                sources = Arrays.copyOf(sources, edgesCount * 2);
+                destinations = Arrays.copyOf(destinations, edgesCount * 2);
+            }
+            sources[edgesCount] = source;
+            destinations[edgesCount] = destination;
+            edgesCount++;
+            return this;
+        }
+
+        public DependencyGraph build() {
+            int verticesCount = names.size();
+            // counting sort of the edges by source
+            int[] offsets = new int[verticesCount + 1];
+            for (int i = 0; i < edgesCount; i++) {
+                offsets[sources[i] + 1]++;
+            }
+            for (int v = 0; v < verticesCount; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            int[] next = Arrays.copyOf(offsets, verticesCount);
+            int[] targets = new int[edgesCount];
+            for (int i = 0; i < edgesCount; i++) {
+                targets[next[sources[i]]++] = destinations[i];
+            }
+            // sort the successors of each vertex and drop duplicate edges
+            int size = 0;
+            int start = 0;
+            for (int v = 0; v < verticesCount; v++) {
+                int end = offsets[v + 1];
+                Arrays.sort(targets, start, end);
+                offsets[v] = size;
+                for (int i = start; i < end; i++) {
+                    if (i == start || targets[i] != targets[i - 1]) {
+                        targets[size++] = targets[i];
+                    }
+                }
+                start = end;
+            }
+            offsets[verticesCount] = size;
+            return new DependencyGraph(names.toArray(new String[0]), ids, offsets,
+                    size == edgesCount ? targets : Arrays.copyOf(targets, size));
+        }
+    }
+}
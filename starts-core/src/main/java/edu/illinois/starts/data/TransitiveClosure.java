@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.logging.Level;
+
+import edu.illinois.starts.util.Logger;
+
+/**
+ * The transitive dependencies of every test, stored as one BitSet of vertex IDs of a DependencyGraph per
+ * test. It is a read-only Map from each test to the names of its dependencies (including the test itself),
+ * which are only decoded when asked for, so that code that takes the closure as a Map can use it unchanged.
+ * Code that can work with IDs should use getClosure and invert instead.
+ */
+public class TransitiveClosure extends AbstractMap<String, Set<String>> {
+    private static final Logger LOGGER = Logger.getGlobal();
+
+    private final DependencyGraph graph;
+    private final Map<String, BitSet> closures;
+
+    public TransitiveClosure(DependencyGraph graph, Map<String, BitSet> closures) {
+        this.graph = graph;
+        this.closures = closures;
+    }
+
+    public static TransitiveClosure compute(DependencyGraph graph, List<String> tests) {
+        return compute(graph, tests, 1);
+    }
+
+    /**
+     * Compute the closure of every test. Instead of a traversal from every test, which would go through the
+     * shared parts of the graph once per test, the graph is condensed into the DAG of its strongly connected
+     * components, and the components reachable from each component are computed once, from the components
+     * reachable from its successors, in reverse topological order. The reachable components of a component
+     * are dropped as soon as all of its predecessors used them.
+     *
+     * <p>With more than one thread, the components are grouped by their height in the DAG, and the components
+     * of each height are processed concurrently on a ForkJoinPool. When the closures that a height would
+     * allocate do not fit in the free heap, that height is processed in chunks of as many components as fit.
+     *
+     * @param graph   The dependency graph
+     * @param tests   The tests
+     * @param threads The number of threads on which to compute the closures; the result does not depend on it
+     * @return        The transitive closure of every test; tests in the same component share their BitSet
+     */
+    public static TransitiveClosure compute(DependencyGraph graph, List<String> tests, int threads) {
+        Condensation condensation = new Condensation(graph, tests);
+        if (threads <= 1) {
+            for (int c = condensation.needed.nextSetBit(0); c >= 0; c = condensation.needed.nextSetBit(c + 1)) {
+                condensation.process(c);
+            }
+        } else {
+            condensation.processInParallel(threads);
+        }
+        Map<String, BitSet> closures = new LinkedHashMap<>();
+        for (String test : tests) {
+            int id = graph.getId(test);
+            // a test that is not in the graph only depends on itself
+            closures.put(test, id < 0 ? new BitSet() : condensation.testClosures.get(condensation.components[id]));
+        }
+        return new TransitiveClosure(graph, closures);
+    }
+
+    public DependencyGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the IDs of the dependencies of a test in the graph, which only include the test itself if the
+     * test is in the graph.
+     */
+    public BitSet getClosure(String test) {
+        return closures.get(test);
+    }
+
+    /**
+     * Get the IDs of all the vertices that some test reaches.
+     */
+    public BitSet getReached() {
+        BitSet reached = new BitSet(graph.getVerticesCount());
+        for (BitSet closure : closures.values()) {
+            reached.or(closure);
+        }
+        return reached;
+    }
+
+    /**
+     * Invert the closure without decoding the dependencies of every test.
+     *
+     * @param testList The tests, which are referred to by their index in this list
+     * @return         A map from each dependency to the indices of the tests that depend on it
+     */
+    public Map<String, BitSet> invert(List<String> testList) {
+        BitSet[] depToTests = new BitSet[graph.getVerticesCount()];
+        Map<String, BitSet> result = new HashMap<>();
+        for (int i = 0; i < testList.size(); i++) {
+            BitSet closure = closures.get(testList.get(i));
+            if (closure.isEmpty()) {
+                result.computeIfAbsent(testList.get(i), k -> new BitSet()).set(i);
+            }
+            for (int id = closure.nextSetBit(0); id >= 0; id = closure.nextSetBit(id + 1)) {
+                if (depToTests[id] == null) {
+                    depToTests[id] = new BitSet();
+                    result.put(graph.getName(id), depToTests[id]);
+                }
+                depToTests[id].set(i);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> get(Object test) {
+        BitSet closure = closures.get(test);
+        if (closure == null) {
+            return null;
+        }
+        Set<String> deps = graph.toNames(closure);
+        deps.add((String) test);
+        return deps;
+    }
+
+    @Override
+    public boolean containsKey(Object test) {
+        return closures.containsKey(test);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(closures.keySet());
+    }
+
+    @Override
+    public int size() {
+        return closures.size();
+    }
+
+    @Override
+    public Set<Entry<String, Set<String>>> entrySet() {
+        return new AbstractSet<Entry<String, Set<String>>>() {
+            @Override
+            public Iterator<Entry<String, Set<String>>> iterator() {
+                Iterator<String> tests = closures.keySet().iterator();
+                return new Iterator<Entry<String, Set<String>>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return tests.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Set<String>> next() {
+                        String test = tests.next();
+                        return new SimpleImmutableEntry<>(test, get(test));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return closures.size();
+            }
+        };
+    }
+
+    /**
+     * The DAG of the strongly connected components of a graph that some test reaches.
+     */
+    private static class Condensation {
+        private final int verticesCount;
+        private final int[] components;
+        private final int componentsCount;
+        // the members of component c are members[membersOffsets[c]] to members[membersOffsets[c + 1] - 1]
+        private final int[] membersOffsets;
+        private final int[] members;
+        // the successors of component c are successors[successorsStart[c]] to successors[successorsEnd[c] - 1]
+        private final int[] successorsStart;
+        private final int[] successorsEnd;
+        private int[] successors;
+        private final BitSet testComponents;
+        private final BitSet needed;
+        private final AtomicIntegerArray predecessorsCount;
+        private final BitSet[] reachable;
+        private final Map<Integer, BitSet> testClosures = new ConcurrentHashMap<>();
+
+        Condensation(DependencyGraph graph, List<String> tests) {
+            verticesCount = graph.getVerticesCount();
+            components = graph.getComponents();
+            int count = 0;
+            for (int component : components) {
+                count = Math.max(count, component + 1);
+            }
+            componentsCount = count;
+            membersOffsets = new int[componentsCount + 1];
+            for (int component : components) {
+                membersOffsets[component + 1]++;
+            }
+            for (int c = 0; c < componentsCount; c++) {
+                membersOffsets[c + 1] += membersOffsets[c];
+            }
+            members = new int[verticesCount];
+            int[] next = Arrays.copyOf(membersOffsets, componentsCount);
+            for (int v = 0; v < verticesCount; v++) {
+                members[next[components[v]]++] = v;
+            }
+            // only the components that some test reaches are needed
+            testComponents = new BitSet(componentsCount);
+            for (String test : tests) {
+                int id = graph.getId(test);
+                if (id >= 0) {
+                    testComponents.set(components[id]);
+                }
+            }
+            needed = (BitSet) testComponents.clone();
+            successorsStart = new int[componentsCount];
+            successorsEnd = new int[componentsCount];
+            successors = new int[Math.max(16, componentsCount)];
+            int[] lastSeen = new int[componentsCount];
+            Arrays.fill(lastSeen, -1);
+            int[] predecessors = new int[componentsCount];
+            int size = 0;
+            // successors have smaller numbers, so going down from the largest component finds every needed one
+            for (int c = componentsCount - 1; c >= 0; c--) {
+                successorsStart[c] = size;
+                if (needed.get(c)) {
+                    for (int i = membersOffsets[c]; i < membersOffsets[c + 1]; i++) {
+                        int vertex = members[i];
+                        for (int j = 0; j < graph.getOutDegree(vertex); j++) {
+                            int successor = components[graph.getSuccessor(vertex, j)];
+                            if (successor != c && lastSeen[successor] != c) {
+                                lastSeen[successor] = c;
+                                if (size == successors.length) {
+                                    successors = Arrays.copyOf(successors, size * 2);
+                                }
+                                successors[size++] = successor;
+                                needed.set(successor);
+                                predecessors[successor]++;
+                            }
+                        }
+                    }
+                }
+                successorsEnd[c] = size;
+            }
+            predecessorsCount = new AtomicIntegerArray(predecessors);
+            reachable = new BitSet[componentsCount];
+        }
+
+        /**
+         * Compute the components reachable from a component, once those of all its successors are known.
+         */
+        void process(int component) {
+            BitSet reached = new BitSet(component + 1);
+            reached.set(component);
+            for (int i = successorsStart[component]; i < successorsEnd[component]; i++) {
+                int successor = successors[i];
+                reached.or(reachable[successor]);
+                if (predecessorsCount.decrementAndGet(successor) == 0) {
+                    reachable[successor] = null;
+                }
+            }
+            if (predecessorsCount.get(component) > 0) {
+                reachable[component] = reached;
+            }
+            if (testComponents.get(component)) {
+                BitSet closure = new BitSet(verticesCount);
+                for (int r = reached.nextSetBit(0); r >= 0; r = reached.nextSetBit(r + 1)) {
+                    for (int i = membersOffsets[r]; i < membersOffsets[r + 1]; i++) {
+                        closure.set(members[i]);
+                    }
+                }
+                testClosures.put(component, closure);
+            }
+        }
+
+        void processInParallel(int threads) {
+            // the height of a component is one more than the largest height of its successors
+            int[] heights = new int[componentsCount];
+            int maxHeight = 0;
+            for (int c = needed.nextSetBit(0); c >= 0; c = needed.nextSetBit(c + 1)) {
+                for (int i = successorsStart[c]; i < successorsEnd[c]; i++) {
+                    heights[c] = Math.max(heights[c], heights[successors[i]] + 1);
+                }
+                maxHeight = Math.max(maxHeight, heights[c]);
+            }
+            List<List<Integer>> levels = new ArrayList<>();
+            for (int h = 0; h <= maxHeight; h++) {
+                levels.add(new ArrayList<>());
+            }
+            for (int c = needed.nextSetBit(0); c >= 0; c = needed.nextSetBit(c + 1)) {
+                levels.get(heights[c]).add(c);
+            }
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                for (List<Integer> level : levels) {
+                    int chunkSize = getChunkSize(level);
+                    for (int from = 0; from < level.size(); from += chunkSize) {
+                        List<Integer> chunk = level.subList(from, Math.min(level.size(), from + chunkSize));
+                        pool.submit(() -> chunk.parallelStream().forEach(this::process)).get();
+                    }
+                }
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        /**
+         * The number of components of a level to process at once, which is the whole level unless the
+         * closures that it would allocate do not fit in the free heap.
+         */
+        private int getChunkSize(List<Integer> level) {
+            long bytes = 0;
+            for (int c : level) {
+                bytes += (c + 1) / Byte.SIZE + (testComponents.get(c) ? verticesCount / Byte.SIZE : 0);
+            }
+            Runtime runtime = Runtime.getRuntime();
+            long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+            if (bytes <= free / 2) {
+                return level.size();
+            }
+            // only as many components as fit are processed at once, which may be fewer than the threads
+            long perComponent = Math.max(1, bytes / level.size());
+            int fits = (int) Math.max(1, Math.min(level.size(), free / 2 / perComponent));
+            LOGGER.log(Level.FINE, "CLOSURES: processing " + level.size() + " components in chunks of " + fits
+                    + " to bound memory");
+            return fits;
+        }
+    }
+}
@@ -7,6 +7,7 @@ package edu.illinois.starts.data;
 import static java.lang.String.join;
 
 import java.net.URL;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -22,9 +23,9 @@ public class ZLCData implements StartsConstants {
     private URL url;
     private String checksum;
     private Set<String> testsStr;
-    private Set<Integer> testsIdx;
+    private BitSet testsIdx;
 
-    public ZLCData(URL url, String checksum, ZLCFormat format, Set<String> testsStr, Set<Integer> testsIdx) {
+    public ZLCData(URL url, String checksum, ZLCFormat format, Set<String> testsStr, BitSet testsIdx) {
         this.format = format;
         this.url = url;
         this.checksum = checksum;
@@ -32,12 +33,25 @@ public class ZLCData implements StartsConstants {
         this.testsIdx = testsIdx;
     }
 
+    public URL getUrl() {
+        return url;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public BitSet getTestsIdx() {
+        return testsIdx;
+    }
+
     @Override
     public String toString() {
         //we track dependencies that are not reached by any test because of *
         String data;
         switch (format) {
             case INDEXED:
+            case BINARY:
                 if (testsIdx.isEmpty()) {
                     data = join(WHITE_SPACE, url.toExternalForm(), checksum);
                 } else {
@@ -57,8 +71,8 @@ public class ZLCData implements StartsConstants {
         return data;
     }
 
-    private static String toCSVInt(Set<Integer> tests) {
-        return tests.stream().map(String::valueOf).collect(Collectors.joining(COMMA));
+    private static String toCSVInt(BitSet tests) {
+        return tests.stream().mapToObj(String::valueOf).collect(Collectors.joining(COMMA));
     }
 
     private static String toCSVStr(Set<String> tests) {
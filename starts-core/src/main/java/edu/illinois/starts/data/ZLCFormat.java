@@ -2,6 +2,7 @@ package edu.illinois.starts.data;
 
 public enum ZLCFormat {
     PLAIN_TEXT,  // store full URLs of tests
-    INDEXED,  // store indices of tests
+    INDEXED,  // store comma-separated indices of tests as text
+    BINARY,  // store a string table, fixed-width checksums and tests as varint-encoded indices or bitmaps
     ;
 }
@@ -9,5 +9,7 @@ package edu.illinois.starts.enums;
  */
 public enum DependencyFormat {
     CLZ,
-    ZLC
+    ZLC,
+    // the dependency graph, from which affected tests are found by walking backward from changed classes
+    GRAPH
 }
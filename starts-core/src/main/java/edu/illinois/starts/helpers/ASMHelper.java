@@ -0,0 +1,529 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import edu.illinois.starts.asm.ClassReader;
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.util.Logger;
+import edu.illinois.starts.util.Pair;
+
+/**
+ * Utility methods for extracting class-level dependencies from bytecode with the bundled ASM
+ * ClassReader. The dependencies are the same kind that "jdeps -v" reports: every type named in
+ * the constant pool, in field and method descriptors, in generic signatures and in annotations.
+ */
+public class ASMHelper implements StartsConstants {
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final String MODULE_INFO = "module-info" + CLASS_EXTENSION;
+    private static final String META_INF = "META-INF/";
+
+    // Constant pool tags and access flags from the JVM specification
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int ACC_MODULE = 0x8000;
+
+    private static final String SIGNATURE = "Signature";
+    private static final String VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final String INVISIBLE_ANNOTATIONS = "RuntimeInvisibleAnnotations";
+    private static final String VISIBLE_PARAMETER_ANNOTATIONS = "RuntimeVisibleParameterAnnotations";
+    private static final String INVISIBLE_PARAMETER_ANNOTATIONS = "RuntimeInvisibleParameterAnnotations";
+    private static final String ANNOTATION_DEFAULT = "AnnotationDefault";
+
+    /**
+     * Extract the dependencies of all classes in the given classpath elements. Directories are
+     * walked recursively and jars are read entry by entry.
+     *
+     * @param paths     The directories and jars to analyze
+     * @param filterLib Drop dependencies on "java.*" and "sun.*" classes, like "jdeps -filter"
+     * @return          A map from each analyzed class to the classes that it depends on
+     */
+    public static Map<String, Set<String>> runASM(List<String> paths, boolean filterLib) {
+        return runASM(paths, filterLib, 1);
+    }
+
+    /**
+     * Extract the dependencies of all classes in the given classpath elements, using up to the given
+     * number of threads. With more than one thread, directories and jars are scanned on a ForkJoinPool
+     * whose workers merge the dependencies of each class file into a concurrent map; the result is the
+     * same as that of the sequential scan.
+     *
+     * @param paths     The directories and jars to analyze
+     * @param filterLib Drop dependencies on "java.*" and "sun.*" classes, like "jdeps -filter"
+     * @param threads   The number of threads to use; values below 2 scan sequentially
+     * @return          A map from each analyzed class to the classes that it depends on
+     */
+    public static Map<String, Set<String>> runASM(List<String> paths, boolean filterLib, int threads) {
+        LOGGER.log(Level.FINE, "ASM PATHS:" + paths);
+        Pattern filter = filterLib ? Pattern.compile(LIB_FILTER) : null;
+        if (threads > 1) {
+            LOGGER.log(Level.FINE, "ASM THREADS:" + threads);
+            Map<String, Set<String>> deps = new ConcurrentHashMap<>();
+            List<ScanTask> tasks = new ArrayList<>();
+            for (String path : paths) {
+                tasks.add(new ScanTask(new File(path), filter, deps));
+            }
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new ScanTask(tasks));
+            } finally {
+                pool.shutdown();
+            }
+            return deps;
+        }
+        Map<String, Set<String>> deps = new HashMap<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                addDepsFromDirectory(file.toPath(), filter, deps);
+            } else if (path.endsWith(JAR_EXTENSION) && file.exists()) {
+                addDepsFromJar(file, filter, deps);
+            }
+        }
+        return deps;
+    }
+
+    /**
+     * Add the dependencies of all class files under the given directory to the given map.
+     */
+    public static void addDepsFromDirectory(Path dir, final Pattern filter, final Map<String, Set<String>> deps) {
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (isClassFile(file.getFileName().toString())) {
+                        addDepsFromClassFile(Files.readAllBytes(file), filter, deps);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Add the dependencies of all class files in the given jar to the given map.
+     */
+    public static void addDepsFromJar(File jar, Pattern filter, Map<String, Set<String>> deps) {
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                // Multi-release jars keep versioned copies of classes under META-INF
+                if (entry.isDirectory() || entry.getName().startsWith(META_INF)
+                        || !isClassFile(entry.getName())) {
+                    continue;
+                }
+                try (InputStream is = zip.getInputStream(entry)) {
+                    addDepsFromClassFile(readBytes(is, (int) entry.getSize()), filter, deps);
+                }
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Parse one class file and add its (non-empty) dependencies to the given map.
+     *
+     * @param bytes  The bytes of the class file
+     * @param filter Dependencies whose fully-qualified name matches this pattern are dropped; may be null
+     * @param deps   The map to which the class and its dependencies are added
+     */
+    public static void addDepsFromClassFile(byte[] bytes, Pattern filter, Map<String, Set<String>> deps) {
+        Pair<String, Set<String>> classDeps = getClassAndDeps(bytes, filter);
+        if (classDeps == null || classDeps.getValue().isEmpty()) {
+            return;
+        }
+        // ConcurrentHashMap merges atomically, so workers of a parallel scan can share the map
+        deps.merge(classDeps.getKey(), classDeps.getValue(), ASMHelper::union);
+    }
+
+    /**
+     * Parse one class file.
+     *
+     * @param bytes  The bytes of the class file
+     * @param filter Dependencies whose fully-qualified name matches this pattern are dropped; may be null
+     * @return       The fully-qualified name of the class and the (possibly empty) set of classes that it
+     *               depends on, or null if the bytes are not a class file that we track
+     */
+    public static Pair<String, Set<String>> getClassAndDeps(byte[] bytes, Pattern filter) {
+        ClassReader reader;
+        try {
+            reader = new ClassReader(bytes);
+        } catch (RuntimeException re) {
+            LOGGER.log(Level.FINEST, "@@UnreadableClassFile: " + re);
+            return null;
+        }
+        if ((reader.readUnsignedShort(reader.header) & ACC_MODULE) != 0) {
+            return null;
+        }
+        String className = reader.getClassName().replace('/', '.');
+        return new Pair<>(className, getDepsFromClassReader(reader, className, filter));
+    }
+
+    static Set<String> union(Set<String> left, Set<String> right) {
+        Set<String> merged = new HashSet<>(left);
+        merged.addAll(right);
+        return merged;
+    }
+
+    /**
+     * Compute the dependencies of one class file.
+     *
+     * @param bytes  The bytes of the class file
+     * @param filter Dependencies whose fully-qualified name matches this pattern are dropped; may be null
+     * @return       The fully-qualified names of the classes that the class file references
+     */
+    public static Set<String> getDepsFromClassFile(byte[] bytes, Pattern filter) {
+        ClassReader reader = new ClassReader(bytes);
+        return getDepsFromClassReader(reader, reader.getClassName().replace('/', '.'), filter);
+    }
+
+    private static Set<String> getDepsFromClassReader(ClassReader reader, String className, Pattern filter) {
+        Set<String> internalNames = new HashSet<>();
+        char[] buf = new char[reader.getMaxStringLength()];
+        try {
+            addConstantPoolTypes(reader, buf, internalNames);
+            addMemberAndAttributeTypes(reader, buf, internalNames);
+        } catch (RuntimeException re) {
+            // Malformed signatures or attributes; keep what we could read so far
+            LOGGER.log(Level.FINEST, "@@PartiallyParsedClassFile: " + className + WHITE_SPACE + re);
+        }
+        Set<String> classDeps = new HashSet<>();
+        for (String internalName : internalNames) {
+            String dep = internalName.replace('/', '.');
+            if (dep.equals(className) || (filter != null && filter.matcher(dep).matches())) {
+                continue;
+            }
+            classDeps.add(dep.intern());
+        }
+        return classDeps;
+    }
+
+    private static void addConstantPoolTypes(ClassReader reader, char[] buf, Set<String> names) {
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            int index = reader.getItem(i);
+            if (index == 0) {
+                // second slot of a long or double constant
+                continue;
+            }
+            switch (reader.readByte(index - 1)) {
+                case CONSTANT_CLASS:
+                    String name = reader.readUTF8(index, buf);
+                    if (name.startsWith("[")) {
+                        addSignatureTypes(name, names);
+                    } else {
+                        names.add(name);
+                    }
+                    break;
+                case CONSTANT_NAME_AND_TYPE:
+                    addSignatureTypes(reader.readUTF8(index + 2, buf), names);
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                    addSignatureTypes(reader.readUTF8(index, buf), names);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void addMemberAndAttributeTypes(ClassReader reader, char[] buf, Set<String> names) {
+        // skip access flags, this class and super class, which are already in the constant pool
+        int offset = reader.header + 6;
+        offset += 2 + 2 * reader.readUnsignedShort(offset);
+        // fields, then methods
+        for (int kind = 0; kind < 2; kind++) {
+            int count = reader.readUnsignedShort(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                addSignatureTypes(reader.readUTF8(offset + 4, buf), names);
+                offset = addAttributeTypes(reader, offset + 6, buf, names);
+            }
+        }
+        addAttributeTypes(reader, offset, buf, names);
+    }
+
+    /**
+     * Add the types named by the attributes that start at the given offset.
+     *
+     * @return The offset right after the attributes
+     */
+    private static int addAttributeTypes(ClassReader reader, int offset, char[] buf, Set<String> names) {
+        int count = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            String attribute = reader.readUTF8(offset, buf);
+            int length = reader.readInt(offset + 2);
+            int start = offset + 6;
+            if (SIGNATURE.equals(attribute)) {
+                addSignatureTypes(reader.readUTF8(start, buf), names);
+            } else if (VISIBLE_ANNOTATIONS.equals(attribute) || INVISIBLE_ANNOTATIONS.equals(attribute)) {
+                addAnnotationsTypes(reader, start, buf, names);
+            } else if (VISIBLE_PARAMETER_ANNOTATIONS.equals(attribute)
+                    || INVISIBLE_PARAMETER_ANNOTATIONS.equals(attribute)) {
+                int parameters = reader.readByte(start);
+                int annotationsOffset = start + 1;
+                for (int p = 0; p < parameters; p++) {
+                    annotationsOffset = addAnnotationsTypes(reader, annotationsOffset, buf, names);
+                }
+            } else if (ANNOTATION_DEFAULT.equals(attribute)) {
+                addElementValueTypes(reader, start, buf, names);
+            }
+            offset = start + length;
+        }
+        return offset;
+    }
+
+    private static int addAnnotationsTypes(ClassReader reader, int offset, char[] buf, Set<String> names) {
+        int count = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            offset = addAnnotationTypes(reader, offset, buf, names);
+        }
+        return offset;
+    }
+
+    private static int addAnnotationTypes(ClassReader reader, int offset, char[] buf, Set<String> names) {
+        addSignatureTypes(reader.readUTF8(offset, buf), names);
+        int pairs = reader.readUnsignedShort(offset + 2);
+        offset += 4;
+        for (int i = 0; i < pairs; i++) {
+            // skip the element name
+            offset = addElementValueTypes(reader, offset + 2, buf, names);
+        }
+        return offset;
+    }
+
+    private static int addElementValueTypes(ClassReader reader, int offset, char[] buf, Set<String> names) {
+        char tag = (char) reader.readByte(offset);
+        offset++;
+        switch (tag) {
+            case 'e':
+                addSignatureTypes(reader.readUTF8(offset, buf), names);
+                return offset + 4;
+            case 'c':
+                addSignatureTypes(reader.readUTF8(offset, buf), names);
+                return offset + 2;
+            case '@':
+                return addAnnotationTypes(reader, offset, buf, names);
+            case '[':
+                int values = reader.readUnsignedShort(offset);
+                offset += 2;
+                for (int i = 0; i < values; i++) {
+                    offset = addElementValueTypes(reader, offset, buf, names);
+                }
+                return offset;
+            default:
+                // constant value
+                return offset + 2;
+        }
+    }
+
+    /**
+     * Add the internal names of all classes named in a field/method descriptor or generic signature.
+     */
+    static void addSignatureTypes(String signature, Set<String> names) {
+        int index = 0;
+        if (signature.charAt(0) == '<') {
+            index = parseTypeParameters(signature, names);
+        }
+        while (index < signature.length()) {
+            char ch = signature.charAt(index);
+            if (ch == '(' || ch == ')' || ch == '^') {
+                index++;
+            } else {
+                index = parseType(signature, index, names);
+            }
+        }
+    }
+
+    private static int parseTypeParameters(String signature, Set<String> names) {
+        int index = 1;
+        while (signature.charAt(index) != '>') {
+            // skip the type parameter identifier, then parse its class and interface bounds
+            index = signature.indexOf(':', index);
+            while (signature.charAt(index) == ':') {
+                index++;
+                char next = signature.charAt(index);
+                if (next != ':' && next != '>') {
+                    index = parseType(signature, index, names);
+                }
+            }
+        }
+        return index + 1;
+    }
+
+    private static int parseType(String signature, int index, Set<String> names) {
+        switch (signature.charAt(index)) {
+            case 'L':
+                return parseClassType(signature, index, names);
+            case 'T':
+                return signature.indexOf(';', index) + 1;
+            case '[':
+                return parseType(signature, index + 1, names);
+            default:
+                // primitive type or void
+                return index + 1;
+        }
+    }
+
+    private static int parseClassType(String signature, int index, Set<String> names) {
+        String name = null;
+        index++;
+        while (true) {
+            int end = index;
+            char delimiter = signature.charAt(end);
+            while (delimiter != ';' && delimiter != '<' && delimiter != '.') {
+                delimiter = signature.charAt(++end);
+            }
+            String simple = signature.substring(index, end);
+            // Inner classes of parameterized types are written as Outer<...>.Inner
+            name = name == null ? simple : name + "$" + simple;
+            names.add(name);
+            index = end;
+            if (delimiter == '<') {
+                index++;
+                while (signature.charAt(index) != '>') {
+                    char argument = signature.charAt(index);
+                    if (argument == '*') {
+                        index++;
+                    } else {
+                        if (argument == '+' || argument == '-') {
+                            index++;
+                        }
+                        index = parseType(signature, index, names);
+                    }
+                }
+                index++;
+                delimiter = signature.charAt(index);
+            }
+            if (delimiter == '.') {
+                index++;
+                continue;
+            }
+            return index + 1;
+        }
+    }
+
+    static boolean isClassFile(String name) {
+        return name.endsWith(CLASS_EXTENSION) && !name.endsWith(MODULE_INFO);
+    }
+
+    /**
+     * Task that scans one classpath element, a batch of class files, or a list of other tasks. Directories
+     * fork one task per subdirectory and split their class files into batches, so idle workers can steal
+     * the work of busy ones.
+     */
+    private static class ScanTask extends RecursiveAction {
+        private static final int BATCH_SIZE = 32;
+
+        private final File file;
+        private final List<File> classFiles;
+        private final List<ScanTask> subtasks;
+        private final Pattern filter;
+        private final Map<String, Set<String>> deps;
+
+        ScanTask(File file, Pattern filter, Map<String, Set<String>> deps) {
+            this(file, null, null, filter, deps);
+        }
+
+        ScanTask(List<ScanTask> subtasks) {
+            this(null, null, subtasks, null, null);
+        }
+
+        private ScanTask(File file, List<File> classFiles, List<ScanTask> subtasks, Pattern filter,
+                         Map<String, Set<String>> deps) {
+            this.file = file;
+            this.classFiles = classFiles;
+            this.subtasks = subtasks;
+            this.filter = filter;
+            this.deps = deps;
+        }
+
+        @Override
+        protected void compute() {
+            if (subtasks != null) {
+                invokeAll(subtasks);
+            } else if (classFiles != null) {
+                scanClassFiles();
+            } else if (file.isDirectory()) {
+                scanDirectory();
+            } else if (file.getName().endsWith(JAR_EXTENSION) && file.exists()) {
+                addDepsFromJar(file, filter, deps);
+            }
+        }
+
+        private void scanDirectory() {
+            File[] children = file.listFiles();
+            if (children == null) {
+                return;
+            }
+            List<ScanTask> tasks = new ArrayList<>();
+            List<File> batch = new ArrayList<>();
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    tasks.add(new ScanTask(child, filter, deps));
+                } else if (isClassFile(child.getName())) {
+                    batch.add(child);
+                    if (batch.size() == BATCH_SIZE) {
+                        tasks.add(new ScanTask(null, batch, null, filter, deps));
+                        batch = new ArrayList<>();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                tasks.add(new ScanTask(null, batch, null, filter, deps));
+            }
+            invokeAll(tasks);
+        }
+
+        private void scanClassFiles() {
+            for (File classFile : classFiles) {
+                try {
+                    addDepsFromClassFile(Files.readAllBytes(classFile.toPath()), filter, deps);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }
+        }
+    }
+
+    static byte[] readBytes(InputStream is, int sizeHint) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(sizeHint > 0 ? sizeHint : 8192);
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = is.read(chunk)) != -1) {
+            baos.write(chunk, 0, read);
+        }
+        return baos.toByteArray();
+    }
+}
@@ -6,37 +6,107 @@ package edu.illinois.starts.helpers;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.enums.DependencyExtractor;
 import edu.illinois.starts.util.Logger;
 
-/** Utility methods for dealing with cached files. */
-
+/**
+ * Utility methods for dealing with cached files. The graph of a jar is cached either under the path of the
+ * jar in the local Maven repository, or, in a content-addressed cache, under the fingerprint of the jar, so
+ * that one cache can be shared by every project on the machine. New graphs are written while holding a
+ * lock on the graph file, and published with an atomic rename, so concurrent builds, and the modules of a
+ * parallel build, never analyze the same jar twice nor read a partial graph.
+ */
 public class Cache implements StartsConstants {
     private static final Logger LOGGER = Logger.getGlobal();
     private static final String GRAPH_EXTENSION = ".graph";
+    private static final String LOCK_EXTENSION = ".lock";
+    private static final String CENTRAL_DIRECTORY_KEY = "cd-";
 
     File jdepsCache;
     String m2Repo;
 
     private Set<String> cpJars;
+    private final boolean contentAddressed;
+    private final Map<String, String> jarKeys = new HashMap<>();
+    private final DependencyExtractor depExtractor;
+    private final int threads;
+    private long maxSize;
 
     public Cache(File jdepsCache, String m2Repo) {
+        this(jdepsCache, m2Repo, false);
+    }
+
+    public Cache(File jdepsCache, String m2Repo, boolean contentAddressed) {
+        this(jdepsCache, m2Repo, contentAddressed, DependencyExtractor.JDEPS, 1);
+    }
+
+    /**
+     * Create a cache whose missing graphs are extracted with the given extractor, from up to "threads" jars
+     * at a time.
+     */
+    public Cache(File jdepsCache, String m2Repo, boolean contentAddressed, DependencyExtractor depExtractor,
+                 int threads) {
         this.jdepsCache = jdepsCache;
         this.m2Repo = m2Repo;
+        this.contentAddressed = contentAddressed;
+        this.depExtractor = depExtractor;
+        this.threads = threads;
+    }
+
+    /**
+     * Bound the size of the graphs in the cache; the least recently used graphs are evicted after every load.
+     *
+     * @param maxSizeInMB The maximum size in megabytes, or 0 for no limit
+     */
+    public void setMaxSize(long maxSizeInMB) {
+        this.maxSize = maxSizeInMB * 1024 * 1024;
+    }
+
+    /**
+     * Get the directory of the jdeps cache that is shared by all the projects of the user.
+     */
+    public static File getSharedCacheDir() {
+        return new File(System.getProperty("user.home"), STARTS_DIRECTORY_PATH + JDEPS_CACHE);
     }
 
     public List<String> loadM2EdgesFromCache(String pathString) {
+        List<String> edges = new ArrayList<>();
+        for (JarGraphFile graph : loadM2GraphsFromCache(pathString)) {
+            edges.addAll(graph.toLines());
+        }
+        LOGGER.log(Level.FINEST, "@@LoadedCachedEdgesFromJars: ");
+        return edges;
+    }
+
+    /**
+     * Load the cached graphs of the third-party jars on the classpath, running jdeps on the jars that are not
+     * in the cache yet. The graphs are kept in their compact binary form, so they should be added to a
+     * DependencyGraph.Builder directly instead of going through the lines of the text format.
+     *
+     * @param pathString The test classpath
+     * @return           The cached graph of every jar on the classpath
+     */
+    public List<JarGraphFile> loadM2GraphsFromCache(String pathString) {
         if (!jdepsCache.exists()) {
-            if (!jdepsCache.mkdir()) {
+            if (!jdepsCache.mkdirs()) {
                 throw new RuntimeException("I could not create the jdeps cache: " + jdepsCache.getAbsolutePath());
             }
         }
@@ -48,8 +118,12 @@ public class Cache implements StartsConstants {
         // Some projects depend directly on jars in the standard library, so
         // we want to check there as well
         jarsInCache.addAll(checkMissingJarsInJDKCache(missing));
-        return loadCachedEdges(jarsInCache);
-
+        Map<String, File> graphFiles = new LinkedHashMap<>();
+        List<JarGraphFile> graphs = loadCachedGraphs(jarsInCache, graphFiles);
+        if (maxSize > 0) {
+            CacheIndex.recordAndEvict(jdepsCache, graphFiles.values(), maxSize);
+        }
+        return graphs;
     }
 
     private HashSet<String> getJarsMissingFromCache(Set<String> jarsInCache) {
@@ -68,19 +142,16 @@ public class Cache implements StartsConstants {
             File missingFile = new File(jar);
             String fileName = missingFile.getName();
             File jdkJarGraphFile = new File(jdepsCache, fileName.replace(JAR_EXTENSION, GRAPH_EXTENSION));
-            if (jdkJarGraphFile.exists()) {
-                found.add(jdkJarGraphFile.getName());
+            File jdkJarBinaryFile = new File(jdepsCache,
+                    fileName.replace(JAR_EXTENSION, JarGraphFile.BINARY_GRAPH_EXTENSION));
+            if (jdkJarBinaryFile.exists() || jdkJarGraphFile.exists()) {
+                found.add(fileName);
             } else {
                 notFound.add(jar);
             }
         }
-        List<String> newlyCreated = new ArrayList<>();
-        for (String jar : notFound) {
-            //1. parse with jdeps and store in the cache
-            List<String> args = new ArrayList<>(Arrays.asList("-v", jar));
-            Writer.writeDepsToFile(RTSUtil.runJdeps(args), createCacheFile(jar).getAbsolutePath());
-            newlyCreated.add(jar);
-        }
+        //1. analyze the missing jars and store their graphs in the cache
+        List<String> newlyCreated = analyzeMissingJars(notFound);
         //2. add newly-created graphs to list of jars that were previously found in cache
         found.addAll(newlyCreated);
         //3. remove newly-created graphs from list of jars that were not found
@@ -91,38 +162,153 @@ public class Cache implements StartsConstants {
         return found;
     }
 
-    private List<String> loadCachedEdges(Set<String> jarsInCache) {
-        List<String> edges = new ArrayList<>();
+    /**
+     * Analyze the jars that are not in the cache, on up to "threads" threads, and write their graphs to the
+     * cache. Jars with the same graph file (identical jars in a content-addressed cache) are analyzed once.
+     *
+     * @return The jars whose graph is now in the cache
+     */
+    private List<String> analyzeMissingJars(Set<String> jars) {
+        long start = System.currentTimeMillis();
+        Map<File, List<String>> jarsPerGraphFile = new LinkedHashMap<>();
+        for (String jar : jars) {
+            File graphFile = createCacheFile(jar, JarGraphFile.BINARY_GRAPH_EXTENSION);
+            jarsPerGraphFile.computeIfAbsent(graphFile, k -> new ArrayList<>()).add(jar);
+        }
+        List<String> created = new ArrayList<>();
+        if (jarsPerGraphFile.isEmpty()) {
+            return created;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, jarsPerGraphFile.size())));
+        try {
+            Map<File, Future<Boolean>> results = new LinkedHashMap<>();
+            for (Map.Entry<File, List<String>> entry : jarsPerGraphFile.entrySet()) {
+                String jar = entry.getValue().get(0);
+                results.put(entry.getKey(), pool.submit(() -> createGraphFile(jar, entry.getKey())));
+            }
+            for (Map.Entry<File, Future<Boolean>> result : results.entrySet()) {
+                try {
+                    if (result.getValue().get()) {
+                        created.addAll(jarsPerGraphFile.get(result.getKey()));
+                    }
+                } catch (ExecutionException ee) {
+                    ee.getCause().printStackTrace();
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        } finally {
+            pool.shutdownNow();
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] analyzeMissingJars(" + jarsPerGraphFile.size() + " jars, " + threads
+                + " threads): " + Writer.millsToSeconds(end - start));
+        return created;
+    }
+
+    private boolean createGraphFile(String jar, File graphFile) {
+        long start = System.currentTimeMillis();
+        try {
+            createGraphFileWithLock(jar, graphFile);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            return false;
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] analyzeJar(" + jar + "): " + Writer.millsToSeconds(end - start));
+        return true;
+    }
+
+    private void createGraphFileWithLock(String jar, File graphFile) throws IOException {
+        Files.createDirectories(graphFile.getParentFile().toPath());
+        File lockFile = new File(graphFile.getPath() + LOCK_EXTENSION);
+        try (CacheLock lock = CacheLock.lock(lockFile.toPath())) {
+            // another build, or another module of this build, may have analyzed the same jar while this one
+            // waited for the lock
+            if (graphFile.exists()) {
+                LOGGER.log(Level.FINEST, "@@CreatedConcurrently: " + graphFile.getAbsolutePath());
+                return;
+            }
+            Map<String, Set<String>> deps;
+            if (depExtractor == DependencyExtractor.ASM) {
+                deps = ASMHelper.runASM(Collections.singletonList(jar), false);
+            } else {
+                deps = RTSUtil.runJdeps(new ArrayList<>(Arrays.asList("-v", jar)));
+            }
+            JarGraphFile.write(deps, graphFile);
+        }
+    }
+
+    private List<JarGraphFile> loadCachedGraphs(Set<String> jarsInCache, Map<String, File> graphFiles) {
+        List<JarGraphFile> graphs = new ArrayList<>();
+        Set<String> evicted = new HashSet<>();
         for (String jar : jarsInCache) {
-            File cacheFile = createCacheFile(jar);
-            LOGGER.log(Level.FINEST, "@@LoadingFromNormalCache: " + cacheFile.getAbsolutePath());
+            File binaryFile = createCacheFile(jar, JarGraphFile.BINARY_GRAPH_EXTENSION);
             try {
-                List<String> lines = Files.readAllLines(cacheFile.toPath(), Charset.defaultCharset());
-                edges.addAll(lines);
+                if (!binaryFile.exists()) {
+                    // graphs cached by older versions are converted once; the text file stays for those versions
+                    JarGraphFile.migrate(createCacheFile(jar, GRAPH_EXTENSION), binaryFile);
+                }
+                LOGGER.log(Level.FINEST, "@@LoadingFromNormalCache: " + binaryFile.getAbsolutePath());
+                graphs.add(new JarGraphFile(binaryFile));
+                graphFiles.put(jar, binaryFile);
+            } catch (NoSuchFileException nsfe) {
+                // another build evicted the graph after we found it in the cache
+                evicted.add(jar);
             } catch (IOException ioe) {
                 ioe.printStackTrace();
             }
         }
-        LOGGER.log(Level.FINEST, "@@LoadedCachedEdgesFromJars: ");
-        return edges;
+        if (!evicted.isEmpty()) {
+            LOGGER.log(Level.FINE, "@@ReanalyzingEvictedJars: " + evicted);
+            graphs.addAll(loadCachedGraphs(new HashSet<>(analyzeMissingJars(evicted)), graphFiles));
+        }
+        return graphs;
     }
 
     private Set<String> getJarsInGraphCache(Set<String> cpJars) {
         Set<String> inCache = new HashSet<>();
         for (String jar : cpJars) {
-            File cacheJar = createCacheFile(jar);
-            if (cacheJar.exists()) {
+            if (createCacheFile(jar, JarGraphFile.BINARY_GRAPH_EXTENSION).exists()
+                    || createCacheFile(jar, GRAPH_EXTENSION).exists()) {
                 inCache.add(jar);
             }
         }
         return inCache;
     }
 
-    private File createCacheFile(String jar) {
-        String cachePath = jar.replace(m2Repo + File.separator, EMPTY).replace(JAR_EXTENSION, GRAPH_EXTENSION);
+    private File createCacheFile(String jar, String extension) {
+        if (contentAddressed && new File(jar).isFile()) {
+            String key = jarKeys.computeIfAbsent(jar, Cache::getContentKey);
+            if (key != null) {
+                // spread the graphs over subdirectories, like git objects, to keep directories small
+                String hash = key.substring(key.indexOf('-') + 1);
+                return new File(new File(jdepsCache, hash.substring(0, 2)), key + extension);
+            }
+        }
+        String cachePath = jar.replace(m2Repo + File.separator, EMPTY).replace(JAR_EXTENSION, extension);
         return new File(jdepsCache, cachePath);
     }
 
+    /**
+     * Get the name of the graph of a jar in a content-addressed cache. Hashing whole jars on every run would
+     * cost as much as analyzing them, so the name is the fingerprint that the jar-checksums file uses, the
+     * hash of the central directory of the jar, which holds the CRC-32 of every entry. Jars whose central
+     * directory cannot be read are named after the hash of their content, as before.
+     *
+     * @return The name, or null if the jar cannot be read
+     */
+    private static String getContentKey(String jar) {
+        String fingerprint = JarFingerprint.hashCentralDirectory(new File(jar));
+        if (fingerprint != null) {
+            // the fingerprint starts with "cd:", which cannot be in a file name on every platform
+            return CENTRAL_DIRECTORY_KEY + fingerprint.substring(fingerprint.indexOf(':') + 1);
+        }
+        String checksum = Writer.getJarToChecksumMapping(jar).getValue();
+        return checksum.equals("-1") ? null : checksum;
+    }
+
     private Set<String> getJarsFromCP(String sfPathString) {
         if (cpJars != null) {
             return cpJars;
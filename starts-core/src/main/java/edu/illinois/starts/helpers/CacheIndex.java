@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.util.Logger;
+
+/**
+ * Keeps the jdeps graph cache under a maximum size by evicting the least recently used graphs. The time at
+ * which every graph was last used is kept in the "cache-index" file at the root of the cache, one
+ * "time path" line per graph, with the path relative to the cache. When the size of the cache is bounded,
+ * every build records the graphs that it used and evicts while holding a lock on the index, so concurrent
+ * builds, and the modules of a parallel build, see each other's accesses. A graph
+ * is only deleted while holding its own lock, so a graph that another build is writing is never evicted,
+ * and graphs at the root of the cache, such as those of the standard library, are never evicted.
+ */
+class CacheIndex implements StartsConstants {
+    static final String INDEX_FILE = "cache-index";
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final String INDEX_LOCK = INDEX_FILE + ".lock";
+    private static final String GRAPH_EXTENSION = ".graph";
+    private static final String LOCK_EXTENSION = ".lock";
+
+    private CacheIndex() {
+    }
+
+    /**
+     * Record that the given graphs were used now, and evict the least recently used other graphs until the
+     * cache is no larger than maxBytes.
+     *
+     * @param jdepsCache The root of the cache
+     * @param used       The graph files that this build used, which are never evicted
+     * @param maxBytes   The maximum size of the graphs in the cache, or 0 for no limit
+     */
+    static void recordAndEvict(File jdepsCache, Collection<File> used, long maxBytes) {
+        long start = System.currentTimeMillis();
+        Path root = jdepsCache.toPath().toAbsolutePath();
+        try (CacheLock lock = CacheLock.lock(root.resolve(INDEX_LOCK))) {
+            Map<String, Long> lastUsed = read(root.resolve(INDEX_FILE));
+            List<String> usedPaths = new ArrayList<>();
+            for (File file : used) {
+                String path = root.relativize(file.toPath().toAbsolutePath()).toString();
+                lastUsed.put(path, start);
+                usedPaths.add(path);
+            }
+            if (maxBytes > 0) {
+                evict(root, lastUsed, usedPaths, maxBytes);
+            }
+            write(root.resolve(INDEX_FILE), lastUsed);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] updateCacheIndex: " + Writer.millsToSeconds(end - start));
+    }
+
+    private static void evict(Path root, Map<String, Long> lastUsed, List<String> usedPaths, long maxBytes)
+            throws IOException {
+        List<Path> graphs;
+        try (Stream<Path> files = Files.walk(root)) {
+            graphs = files.filter(file -> isGraph(file) && !file.getParent().equals(root))
+                    .collect(Collectors.toList());
+        }
+        long size = 0;
+        Map<String, Long> sizes = new HashMap<>();
+        for (Path graph : graphs) {
+            String path = root.relativize(graph).toString();
+            long graphSize = Files.size(graph);
+            sizes.put(path, graphSize);
+            size += graphSize;
+            // graphs that were cached before the index existed count as used when they were last modified
+            if (!lastUsed.containsKey(path)) {
+                lastUsed.put(path, Files.getLastModifiedTime(graph).toMillis());
+            }
+        }
+        // forget graphs that were deleted by hand
+        lastUsed.keySet().retainAll(sizes.keySet());
+        if (size <= maxBytes) {
+            return;
+        }
+        List<String> candidates = new ArrayList<>(sizes.keySet());
+        candidates.removeAll(usedPaths);
+        candidates.sort((first, second) -> Long.compare(lastUsed.get(first), lastUsed.get(second)));
+        int evicted = 0;
+        for (String path : candidates) {
+            if (size <= maxBytes) {
+                break;
+            }
+            if (delete(root.resolve(path))) {
+                size -= sizes.get(path);
+                lastUsed.remove(path);
+                evicted++;
+            }
+        }
+        LOGGER.log(Level.FINE, "CACHE EVICTED: " + evicted + " graphs; size is now " + size + " bytes");
+    }
+
+    private static boolean delete(Path graph) {
+        // the binary graph and the text graph that it was migrated from share one lock
+        String name = graph.getFileName().toString();
+        String base = name.substring(0, name.lastIndexOf('.'));
+        Path lockFile = graph.resolveSibling(base + JarGraphFile.BINARY_GRAPH_EXTENSION + LOCK_EXTENSION);
+        try (CacheLock lock = CacheLock.tryLock(lockFile)) {
+            if (lock == null) {
+                // another build, or another module of this build, is writing this graph right now
+                return false;
+            }
+            return Files.deleteIfExists(graph);
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Could not evict " + graph, ex);
+            return false;
+        }
+    }
+
+    private static boolean isGraph(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(JarGraphFile.BINARY_GRAPH_EXTENSION) || name.endsWith(GRAPH_EXTENSION);
+    }
+
+    private static Map<String, Long> read(Path index) {
+        Map<String, Long> lastUsed = new HashMap<>();
+        if (!Files.exists(index)) {
+            return lastUsed;
+        }
+        try {
+            for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                int space = line.indexOf(WHITE_SPACE);
+                if (space > 0) {
+                    lastUsed.put(line.substring(space + 1), Long.parseLong(line.substring(0, space)));
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            // the index only guides eviction, so a broken index is rebuilt from the modification times
+            LOGGER.log(Level.WARNING, "Ignoring unreadable " + INDEX_FILE, ex);
+            lastUsed.clear();
+        }
+        return lastUsed;
+    }
+
+    private static void write(Path index, Map<String, Long> lastUsed) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : lastUsed.entrySet()) {
+            lines.add(entry.getValue() + WHITE_SPACE + entry.getKey());
+        }
+        FileUtil.writeAtomically(index.toFile(), out -> {
+            for (String line : lines) {
+                out.write((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+}
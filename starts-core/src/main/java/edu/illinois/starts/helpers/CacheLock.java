@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An exclusive lock on a lock file of the jdeps graph cache, held against both other builds and other threads
+ * of this build. A FileLock belongs to the whole JVM, so a second FileChannel.lock() on the same file from
+ * the same JVM, e.g., by another module of a parallel Maven build that shares the cache, throws an
+ * OverlappingFileLockException instead of waiting. The threads of one JVM therefore first take an in-JVM
+ * lock, keyed by the canonical path of the lock file, and only the thread that holds it takes the FileLock.
+ */
+class CacheLock implements AutoCloseable {
+    private static final Map<Path, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final ReentrantLock jvmLock;
+    // the channel holds the FileLock until it is closed
+    private final FileChannel channel;
+
+    private CacheLock(ReentrantLock jvmLock, FileChannel channel) {
+        this.jvmLock = jvmLock;
+        this.channel = channel;
+    }
+
+    /**
+     * Lock the given lock file, waiting for other threads and other builds to release it.
+     *
+     * @param lockFile The lock file, which is created if it does not exist
+     * @return         The lock, to be closed to release it
+     * @throws IOException If the lock file cannot be created or locked
+     */
+    static CacheLock lock(Path lockFile) throws IOException {
+        ReentrantLock jvmLock = getJvmLock(lockFile);
+        jvmLock.lock();
+        return lockFile(lockFile, jvmLock, true);
+    }
+
+    /**
+     * Lock the given lock file, unless another thread or another build holds it.
+     *
+     * @param lockFile The lock file, which is created if it does not exist
+     * @return         The lock, to be closed to release it, or null if the file is locked
+     * @throws IOException If the lock file cannot be created or locked
+     */
+    static CacheLock tryLock(Path lockFile) throws IOException {
+        ReentrantLock jvmLock = getJvmLock(lockFile);
+        if (!jvmLock.tryLock()) {
+            return null;
+        }
+        return lockFile(lockFile, jvmLock, false);
+    }
+
+    private static CacheLock lockFile(Path lockFile, ReentrantLock jvmLock, boolean wait) throws IOException {
+        FileChannel channel = null;
+        FileLock fileLock = null;
+        try {
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            fileLock = wait ? channel.lock() : channel.tryLock();
+        } finally {
+            if (fileLock == null) {
+                try {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                } finally {
+                    jvmLock.unlock();
+                }
+            }
+        }
+        return fileLock == null ? null : new CacheLock(jvmLock, channel);
+    }
+
+    private static ReentrantLock getJvmLock(Path lockFile) throws IOException {
+        Path canonical = lockFile.toFile().getCanonicalFile().toPath();
+        return LOCKS.computeIfAbsent(canonical, path -> new ReentrantLock());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            jvmLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.ClassDepsData;
+import edu.illinois.starts.util.Logger;
+import edu.illinois.starts.util.Pair;
+
+/**
+ * Utility methods for dealing with the class-deps file, which stores the outgoing dependency edges of
+ * every class file in the local classpath directories, so that the next run only needs to re-extract
+ * the edges of class files that changed. Like in the checksum cache, the metadata of a class file that was
+ * modified too close to the time at which it was scanned is not trusted, because a second write within the
+ * resolution of the modification time would not change it.
+ */
+public class ClassDepsHelper implements StartsConstants {
+    public static final String CLASS_DEPS_FILE = "class-deps";
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final String FILTER_LIB_HEADER = "version:2 filterLib:";
+    private static final long RACY_MILLIS = 2000;
+
+    /**
+     * Compute the dependency map of the classes in the given directories, reusing the edges stored by the
+     * previous run for every class file whose checksum did not change. Files whose size and modification
+     * time are unchanged, and were not modified right before they were scanned, are not even read. The
+     * class-deps file is then patched for the next run. Every class file is still listed, and the returned
+     * map still covers all classes, so only the time spent extracting edges is saved.
+     *
+     * @param artifactsDir The directory in which we store STARTS artifacts
+     * @param localPaths   The classpath directories to analyze
+     * @param filterLib    Drop dependencies on "java.*" and "sun.*" classes
+     * @return             A map from each analyzed class to the classes that it depends on
+     */
+    public static Map<String, Set<String>> updateDepMap(String artifactsDir, List<String> localPaths,
+                                                        boolean filterLib) {
+        long start = System.currentTimeMillis();
+        Pattern filter = filterLib ? Pattern.compile(LIB_FILTER) : null;
+        Map<String, ClassDepsData> oldData = readClassDeps(artifactsDir, filterLib);
+        List<ClassDepsData> newData = new ArrayList<>();
+        int reused = 0;
+        int extracted = 0;
+        int matched = 0;
+        boolean touched = false;
+        for (String localPath : localPaths) {
+            for (Pair<Path, BasicFileAttributes> classFile : listClassFiles(localPath)) {
+                Path path = classFile.getKey();
+                long size = classFile.getValue().size();
+                long lastModified = classFile.getValue().lastModifiedTime().toMillis();
+                String url = path.toUri().toString();
+                ClassDepsData old = oldData.get(url);
+                if (old != null) {
+                    matched++;
+                }
+                if (old != null && old.getSize() == size && old.getLastModified() == lastModified
+                        && lastModified < old.getScannedAt() - RACY_MILLIS) {
+                    newData.add(old);
+                    reused++;
+                    continue;
+                }
+                long scannedAt = System.currentTimeMillis();
+                byte[] bytes;
+                try {
+                    bytes = Files.readAllBytes(path);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                    continue;
+                }
+                long checksum = checksum(bytes);
+                if (old != null && old.getChecksum() == checksum) {
+                    // only the timestamp changed, e.g., after a clean rebuild, or the file was modified right
+                    // before the previous scan
+                    old.touch(size, lastModified, scannedAt);
+                    touched = true;
+                    newData.add(old);
+                    reused++;
+                    continue;
+                }
+                Pair<String, Set<String>> classDeps = ASMHelper.getClassAndDeps(bytes, filter);
+                if (classDeps != null) {
+                    newData.add(new ClassDepsData(classDeps.getKey(), url, size, lastModified, scannedAt,
+                            checksum, classDeps.getValue()));
+                    extracted++;
+                }
+            }
+        }
+        Map<String, Set<String>> deps = new HashMap<>();
+        for (ClassDepsData data : newData) {
+            if (!data.getDeps().isEmpty()) {
+                deps.merge(data.getClassName(), data.getDeps(), ASMHelper::union);
+            }
+        }
+        int removed = oldData.size() - matched;
+        if (extracted > 0 || removed > 0 || touched) {
+            writeClassDeps(artifactsDir, filterLib, newData);
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "INCREMENTAL DEPS: reused " + reused + ", extracted " + extracted + ", removed "
+                + removed);
+        LOGGER.log(Level.FINE, "[PROFILE] updateDepMap: " + Writer.millsToSeconds(end - start));
+        return deps;
+    }
+
+    private static List<Pair<Path, BasicFileAttributes>> listClassFiles(String localPath) {
+        final List<Pair<Path, BasicFileAttributes>> classFiles = new ArrayList<>();
+        File dir = new File(localPath);
+        if (!dir.isDirectory()) {
+            return classFiles;
+        }
+        try {
+            Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (ASMHelper.isClassFile(file.getFileName().toString())) {
+                        classFiles.add(new Pair<>(file, attrs));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+        return classFiles;
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private static Map<String, ClassDepsData> readClassDeps(String artifactsDir, boolean filterLib) {
+        Map<String, ClassDepsData> data = new HashMap<>();
+        File file = new File(artifactsDir, CLASS_DEPS_FILE);
+        if (!file.exists()) {
+            LOGGER.log(Level.FINEST, "@NoExistingClassDepsFile. First Run?");
+            return data;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), Charset.defaultCharset());
+            if (lines.isEmpty() || !lines.get(0).equals(FILTER_LIB_HEADER + filterLib)) {
+                // the stored edges were extracted with different options, or by an older version
+                return data;
+            }
+            for (int i = 1; i < lines.size(); i++) {
+                String[] parts = lines.get(i).split(WHITE_SPACE);
+                Set<String> deps = new HashSet<>();
+                if (parts.length == 7) {
+                    for (String dep : parts[6].split(COMMA)) {
+                        deps.add(dep.intern());
+                    }
+                }
+                data.put(parts[1], new ClassDepsData(parts[0], parts[1], Long.parseLong(parts[2]),
+                        Long.parseLong(parts[3]), Long.parseLong(parts[4]), Long.parseLong(parts[5]), deps));
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Ignoring corrupt " + CLASS_DEPS_FILE + " file", ex);
+            data.clear();
+        }
+        return data;
+    }
+
+    private static void writeClassDeps(String artifactsDir, boolean filterLib, List<ClassDepsData> data) {
+        List<Object> lines = new ArrayList<>();
+        lines.add(FILTER_LIB_HEADER + filterLib);
+        lines.addAll(data);
+        Writer.writeToFile(lines, CLASS_DEPS_FILE, artifactsDir);
+    }
+}
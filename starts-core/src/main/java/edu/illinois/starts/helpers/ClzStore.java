@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.util.CheckSumCache;
+import edu.illinois.starts.util.ChecksumUtil;
+import edu.illinois.starts.util.Logger;
+import edu.illinois.starts.util.Pair;
+import org.ekstazi.data.RegData;
+
+/**
+ * Stores the dependencies of all tests in the CLZ format in one file, instead of one .clz file per test.
+ * The file starts with the line "CLZSTORE", followed by a table of all the (URL, checksum) pairs that any
+ * test depends on, each stored once, and by one section per test with the test name and the indices of its
+ * pairs in the table. Finding the non-affected tests reads the file once, from start to end, and hashes
+ * every tracked class once, however many tests depend on it.
+ */
+public class ClzStore implements StartsConstants {
+    public static final String CLZ_STORE = "deps.clzs";
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final byte[] MAGIC = "CLZSTORE\n".getBytes(StandardCharsets.UTF_8);
+    // the saved checksums strip debug info from the class files, see ChecksumUtil.makeCheckSumMap
+    private static final boolean CLEAN_BYTES = true;
+
+    private final List<String> urls = new ArrayList<>();
+    private final List<String> checksums = new ArrayList<>();
+    private final Map<Pair<String, String>, Integer> ids = new HashMap<>();
+    private final Map<String, int[]> tests = new LinkedHashMap<>();
+
+    /**
+     * Check if the dependencies of the tests were saved in a store in the given directory.
+     */
+    public static boolean exists(String artifactsDir) {
+        return new File(artifactsDir, CLZ_STORE).exists();
+    }
+
+    /**
+     * Find the tests that are not affected by the changes since their dependencies were saved.
+     *
+     * @param artifactsDir The directory in which we store STARTS artifacts
+     * @param threads      The number of threads on which to hash the tracked classes
+     * @return             The non-affected tests and the URLs of the classes that changed, or null if there is
+     *                     no readable store
+     */
+    public static Pair<Set<String>, Set<String>> getChangedData(String artifactsDir, int threads) {
+        long start = System.currentTimeMillis();
+        ClzStore store;
+        try {
+            store = read(new File(artifactsDir, CLZ_STORE));
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable " + CLZ_STORE + " file", ioe);
+            return null;
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] readClzStore: " + Writer.millsToSeconds(end - start));
+        return store.getChangedData(artifactsDir, threads, start);
+    }
+
+    /**
+     * Find the tests of this store that are not affected by the changes, hashing every tracked class once
+     * through the checksum cache of the given directory.
+     */
+    Pair<Set<String>, Set<String>> getChangedData(String artifactsDir, int threads, long start) {
+        CheckSumCache cache = CheckSumCache.load(artifactsDir, CLEAN_BYTES);
+        String[] newCheckSums = ChecksumUtil.computeCheckSums(urls, CLEAN_BYTES, threads, cache);
+        cache.save(artifactsDir);
+        BitSet changedIds = new BitSet(urls.size());
+        Set<String> changed = new HashSet<>();
+        for (int i = 0; i < newCheckSums.length; i++) {
+            if (!newCheckSums[i].equals(checksums.get(i))) {
+                changedIds.set(i);
+                changed.add(urls.get(i));
+            }
+        }
+        Set<String> nonAffected = new HashSet<>();
+        for (Map.Entry<String, int[]> test : tests.entrySet()) {
+            // like Ekstazi, and like a test without rows in deps.zlc, a test without dependencies is affected
+            boolean affected = test.getValue().length == 0;
+            for (int id : test.getValue()) {
+                affected |= changedIds.get(id);
+            }
+            if (!affected) {
+                nonAffected.add(test.getKey());
+            }
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "CHECKSUM CACHE HITS: " + cache.getHits());
+        LOGGER.log(Level.FINEST, TIME_COMPUTING_NON_AFFECTED + (end - start) + MILLISECOND);
+        return new Pair<>(nonAffected, changed);
+    }
+
+    /**
+     * Add the dependencies of a test, replacing what was added for it before.
+     */
+    void put(String test, Set<RegData> regData) {
+        int[] testIds = new int[regData.size()];
+        int next = 0;
+        for (RegData data : regData) {
+            testIds[next++] = getId(data.getURLExternalForm(), data.getHash());
+        }
+        tests.put(test, testIds);
+    }
+
+    /**
+     * Save the dependencies of the given tests, replacing what was saved for them before, and keeping what
+     * was saved for the other tests that still exist.
+     *
+     * @param newCheckSums The dependencies of each test, with their checksums
+     * @param allTests     All the current tests; what was saved for any other test is dropped
+     * @param artifactsDir The directory in which we store STARTS artifacts
+     * @throws IOException If the store cannot be written
+     */
+    public static void save(Map<String, Set<RegData>> newCheckSums, Set<String> allTests, String artifactsDir)
+            throws IOException {
+        File file = new File(artifactsDir, CLZ_STORE);
+        ClzStore store = new ClzStore();
+        if (file.exists()) {
+            try {
+                ClzStore old = read(file);
+                // only the pairs that the kept tests still refer to are copied to the new table
+                for (Map.Entry<String, int[]> test : old.tests.entrySet()) {
+                    if (allTests.contains(test.getKey()) && !newCheckSums.containsKey(test.getKey())) {
+                        int[] oldIds = test.getValue();
+                        int[] newIds = new int[oldIds.length];
+                        for (int i = 0; i < oldIds.length; i++) {
+                            newIds[i] = store.getId(old.urls.get(oldIds[i]), old.checksums.get(oldIds[i]));
+                        }
+                        store.tests.put(test.getKey(), newIds);
+                    }
+                }
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Regenerating unreadable " + CLZ_STORE + " file", ioe);
+            }
+        }
+        for (Map.Entry<String, Set<RegData>> test : newCheckSums.entrySet()) {
+            store.put(test.getKey(), test.getValue());
+        }
+        store.write(file);
+    }
+
+    private int getId(String url, String checksum) {
+        return ids.computeIfAbsent(new Pair<>(url, checksum), pair -> {
+            urls.add(url);
+            checksums.add(checksum);
+            return urls.size() - 1;
+        });
+    }
+
+    static ClzStore read(File file) throws IOException {
+        ClzStore store = new ClzStore();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(
+                file.toPath())))) {
+            byte[] start = new byte[MAGIC.length];
+            in.readFully(start);
+            if (!Arrays.equals(MAGIC, start)) {
+                throw new IOException(file + " is not a CLZ store");
+            }
+            int pairsCount = in.readInt();
+            for (int i = 0; i < pairsCount; i++) {
+                store.urls.add(in.readUTF());
+                store.checksums.add(in.readUTF());
+            }
+            int testsCount = in.readInt();
+            for (int i = 0; i < testsCount; i++) {
+                String test = in.readUTF();
+                int[] testIds = new int[in.readInt()];
+                for (int j = 0; j < testIds.length; j++) {
+                    testIds[j] = in.readInt();
+                    if (testIds[j] < 0 || testIds[j] >= pairsCount) {
+                        throw new IOException(file + " is corrupt");
+                    }
+                }
+                store.tests.put(test, testIds);
+            }
+        }
+        return store;
+    }
+
+    private void write(File file) throws IOException {
+        FileUtil.writeAtomically(file, out -> {
+            out.write(MAGIC);
+            out.writeInt(urls.size());
+            for (int i = 0; i < urls.size(); i++) {
+                out.writeUTF(urls.get(i));
+                out.writeUTF(checksums.get(i));
+            }
+            out.writeInt(tests.size());
+            for (Map.Entry<String, int[]> test : tests.entrySet()) {
+                out.writeUTF(test.getKey());
+                out.writeInt(test.getValue().length);
+                for (int id : test.getValue()) {
+                    out.writeInt(id);
+                }
+            }
+        });
+    }
+}
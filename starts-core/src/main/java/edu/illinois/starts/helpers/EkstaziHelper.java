@@ -4,21 +4,18 @@
 
 package edu.illinois.starts.helpers;
 
-import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.IOException;
-import java.io.PrintStream;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.util.ChecksumUtil;
 import edu.illinois.starts.util.Logger;
 import edu.illinois.starts.util.Pair;
 import org.ekstazi.check.AffectedChecker;
+import org.ekstazi.data.RegData;
 
 /**
  * Utility methods for interacting with Ekstazi.
@@ -27,30 +24,39 @@ public class EkstaziHelper implements StartsConstants {
     public static final Logger LOGGER = Logger.getGlobal();
     public static String notFirstRunMarker = "not-first-run.clz";
     public static String lineSeparator = System.getProperty("line.separator");
+    private static final String CLZ_EXTENSION = ".clz";
 
     public static Pair<Set<String>, Set<String>> getNonAffectedTests(String artifactsDir) {
+        return getNonAffectedTests(artifactsDir, 1);
+    }
+
+    /**
+     * Find the tests whose .clz files show that they are not affected by the changes. The .clz files are
+     * checked in process, like the tests in a ClzStore: every tracked class is hashed once, through the same
+     * checksum cache as the other formats, however many tests depend on it.
+     *
+     * @param artifactsDir The directory with one .clz file per test
+     * @param threads      The number of threads on which to hash the tracked classes
+     * @return             The non-affected tests and the URLs of the classes that changed, or null on the
+     *                     first run
+     */
+    public static Pair<Set<String>, Set<String>> getNonAffectedTests(String artifactsDir, int threads) {
         long start = System.currentTimeMillis();
         if (isFirstRun(artifactsDir)) {
             return null;
         }
-        ByteArrayOutputStream baosOut = new ByteArrayOutputStream();
-        ByteArrayOutputStream baosErr = new ByteArrayOutputStream();
-        PrintStream psOut = new PrintStream(baosOut);
-        PrintStream psErr = new PrintStream(baosErr);
-        PrintStream oldOut = System.out;
-        PrintStream olderr = System.err;
-        System.setOut(psOut);
-        System.setErr(psErr);
-        AffectedChecker.main(Arrays.asList(artifactsDir).toArray(new String[1]));
-        System.out.flush();
-        System.err.flush();
-        System.setOut(oldOut);
-        System.setErr(olderr);
-        Set<String> changed = processEkstaziDebugInfo(baosErr, artifactsDir);
-        Set<String> nonAffected = new HashSet<>(Arrays.asList(baosOut.toString().split(lineSeparator)));
-        long end = System.currentTimeMillis();
-        LOGGER.log(Level.FINEST, TIME_COMPUTING_NON_AFFECTED + (end - start) + MILLISECOND);
-        return new Pair<>(nonAffected, changed);
+        ClzStore store = new ClzStore();
+        File[] clzFiles = new File(artifactsDir).listFiles((dir, name) -> name.endsWith(CLZ_EXTENSION)
+                && !name.equals(notFirstRunMarker));
+        for (File clzFile : clzFiles == null ? new File[0] : clzFiles) {
+            Set<RegData> regData = ChecksumUtil.readChecksumFile(clzFile);
+            // a test whose .clz file cannot be read is not in the store, so it is affected
+            if (regData != null) {
+                String name = clzFile.getName();
+                store.put(name.substring(0, name.length() - CLZ_EXTENSION.length()), regData);
+            }
+        }
+        return store.getChangedData(artifactsDir, threads, start);
     }
 
     public static Pair<Set<String>, Set<String>> getNonAffectedTests(File basedir) {
@@ -68,36 +74,6 @@ public class EkstaziHelper implements StartsConstants {
         return !(new File(artifactsDir, notFirstRunMarker).exists());
     }
 
-    /**
-     * Process the Ekstazi debug output to get what classes Ekstazi thinks changed, and write those changed classes
-     * to file.
-     *
-     * @param baosErr      Ekstazi Debug Output
-     * @param artifactsDir Directory in which we store STARTS artifacts (i.e., ".starts")
-     * @return             The (possibly empty) set of changed classes
-     */
-    private static Set<String> processEkstaziDebugInfo(ByteArrayOutputStream baosErr, String artifactsDir) {
-        Set<String> changed = new HashSet<>();
-        if (LOGGER.getLoggingLevel().intValue() > Level.FINEST.intValue()) {
-            return changed;
-        }
-        String outFilename = artifactsDir + File.separator + CHANGED_CLASSES;
-        for (String line : Arrays.asList(baosErr.toString().split(lineSeparator))) {
-            String ekstaziDiffMarker = "::Diff:: ";
-            if (line.contains(ekstaziDiffMarker)) {
-                changed.add(line.split(ekstaziDiffMarker)[1]);
-            }
-        }
-        try (BufferedWriter writer = Writer.getWriter(outFilename)) {
-            for (String file : changed) {
-                writer.write(file + lineSeparator);
-            }
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
-        }
-        return changed;
-    }
-
     private static String getRootDirOption(File basedir) {
         return "root.dir=" + getRootDirURI(basedir);
     }
@@ -4,7 +4,14 @@
 
 package edu.illinois.starts.helpers;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 /**
  * File handling utility methods.
@@ -18,4 +25,38 @@ public class FileUtil {
         }
         file.delete();
     }
+
+    /**
+     * Write a file through a temporary file in the same directory that is then renamed to it, so that readers,
+     * and a crash while writing, never see a partial file. Where the file system cannot rename atomically, the
+     * file is replaced instead.
+     *
+     * @param file    The file to write
+     * @param content Writes the content of the file
+     * @throws IOException If the file cannot be written
+     */
+    public static void writeAtomically(File file, ContentWriter content) throws IOException {
+        Path dir = file.getAbsoluteFile().getParentFile().toPath();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                content.write(out);
+            }
+            try {
+                Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes the content of a file.
+     */
+    public interface ContentWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
 }
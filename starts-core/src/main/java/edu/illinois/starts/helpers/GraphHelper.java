@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.DependencyGraph;
+import edu.illinois.starts.util.CheckSumCache;
+import edu.illinois.starts.util.ChecksumUtil;
+import edu.illinois.starts.util.ClassPathIndex;
+import edu.illinois.starts.util.Logger;
+import edu.illinois.starts.util.Pair;
+
+/**
+ * Utility methods for dealing with the deps.graph file of the GRAPH format. Instead of the transitive
+ * dependencies of every test, the file stores the part of the dependency graph that the tests reach, with
+ * its edges reversed, and the checksum of every class in it. The affected tests are then found by walking
+ * backward from the classes that changed, so the work done after hashing only depends on the size of the
+ * change, and no per-test closure is ever computed.
+ */
+public class GraphHelper implements StartsConstants {
+    public static final String GRAPH_DEPS_FILE = "deps.graph";
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final String MAGIC = "STARTS-GRAPH-1";
+    private static final String NO_URL = "";
+
+    /**
+     * Write the deps.graph file for the next run.
+     *
+     * @param graph        The dependency graph
+     * @param tests        All the tests
+     * @param loader       The loader used to find the URL of every class
+     * @param artifactsDir The directory in which we store STARTS artifacts
+     * @param useJars      Track classes in third-party jars
+     */
+    public static void updateGraphFile(DependencyGraph graph, List<String> tests, ClassLoader loader,
+                                       String artifactsDir, boolean useJars) {
+        updateGraphFile(graph, tests, ClassPathIndex.create(loader), artifactsDir, useJars);
+    }
+
+    /**
+     * Same as updateGraphFile(graph, tests, loader, artifactsDir, useJars), with an index of the classpath of
+     * the loader that was already built in this run.
+     *
+     * @param index The index used to find the URL of every class
+     */
+    public static void updateGraphFile(DependencyGraph graph, List<String> tests, ClassPathIndex index,
+                                       String artifactsDir, boolean useJars) {
+        long start = System.currentTimeMillis();
+        // one traversal from all the tests finds every class that some test depends on
+        BitSet roots = new BitSet(graph.getVerticesCount());
+        for (String test : tests) {
+            int id = graph.getId(test);
+            if (id >= 0) {
+                roots.set(id);
+            }
+        }
+        BitSet reached = graph.reachableFrom(roots);
+        // the reached vertices get new dense IDs, and tests that are not in the graph are added after them
+        int[] newIds = new int[graph.getVerticesCount()];
+        List<String> names = new ArrayList<>();
+        for (int id = reached.nextSetBit(0); id >= 0; id = reached.nextSetBit(id + 1)) {
+            newIds[id] = names.size();
+            names.add(graph.getName(id));
+        }
+        int[] testIds = new int[tests.size()];
+        for (int i = 0; i < tests.size(); i++) {
+            int id = graph.getId(tests.get(i));
+            if (id >= 0) {
+                testIds[i] = newIds[id];
+            } else {
+                testIds[i] = names.size();
+                names.add(tests.get(i));
+            }
+        }
+        // reverse the edges, grouping them by destination
+        int[] predecessorsOffsets = new int[names.size() + 1];
+        for (int id = reached.nextSetBit(0); id >= 0; id = reached.nextSetBit(id + 1)) {
+            for (int i = 0; i < graph.getOutDegree(id); i++) {
+                predecessorsOffsets[newIds[graph.getSuccessor(id, i)] + 1]++;
+            }
+        }
+        for (int v = 0; v < names.size(); v++) {
+            predecessorsOffsets[v + 1] += predecessorsOffsets[v];
+        }
+        int[] predecessors = new int[predecessorsOffsets[names.size()]];
+        int[] next = Arrays.copyOf(predecessorsOffsets, names.size());
+        for (int id = reached.nextSetBit(0); id >= 0; id = reached.nextSetBit(id + 1)) {
+            for (int i = 0; i < graph.getOutDegree(id); i++) {
+                predecessors[next[newIds[graph.getSuccessor(id, i)]]++] = newIds[id];
+            }
+        }
+        // the checksums in deps.graph are always computed with cleanBytes, like the ones in deps.zlc
+        CheckSumCache cache = CheckSumCache.load(artifactsDir, true);
+        ChecksumUtil checksumUtil = new ChecksumUtil(true, cache);
+        String[] urls = new String[names.size()];
+        long[] checksums = new long[names.size()];
+        BitSet reachesTracked = new BitSet(names.size());
+        int[] stack = new int[names.size()];
+        int size = 0;
+        for (int v = 0; v < names.size(); v++) {
+            URL url = ZLCHelper.getTrackedURL(names.get(v), index, useJars);
+            urls[v] = url == null ? NO_URL : url.toExternalForm();
+            if (url != null) {
+                checksums[v] = Long.parseLong(checksumUtil.computeSingleCheckSum(url));
+                reachesTracked.set(v);
+                stack[size++] = v;
+            }
+        }
+        while (size > 0) {
+            int vertex = stack[--size];
+            for (int i = predecessorsOffsets[vertex]; i < predecessorsOffsets[vertex + 1]; i++) {
+                int predecessor = predecessors[i];
+                if (!reachesTracked.get(predecessor)) {
+                    reachesTracked.set(predecessor);
+                    stack[size++] = predecessor;
+                }
+            }
+        }
+        // like in deps.zlc, a test that reaches no tracked class is left out, so that it is always affected
+        int[] trackedTestIds = Arrays.stream(testIds).filter(reachesTracked::get).toArray();
+        File file = new File(artifactsDir, GRAPH_DEPS_FILE);
+        try {
+            // a crash while writing leaves the previous deps.graph in place instead of a truncated one
+            FileUtil.writeAtomically(file, out -> {
+                out.writeUTF(MAGIC);
+                out.writeInt(names.size());
+                out.writeInt(trackedTestIds.length);
+                out.writeInt(predecessors.length);
+                for (int v = 0; v < names.size(); v++) {
+                    out.writeUTF(names.get(v));
+                    out.writeUTF(urls[v]);
+                    out.writeLong(checksums[v]);
+                }
+                for (int testId : trackedTestIds) {
+                    out.writeInt(testId);
+                }
+                for (int offset : predecessorsOffsets) {
+                    out.writeInt(offset);
+                }
+                for (int predecessor : predecessors) {
+                    out.writeInt(predecessor);
+                }
+            });
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+        cache.save(artifactsDir);
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[PROFILE] updateForNextRun(updateGraphFile): " + Writer.millsToSeconds(end - start));
+    }
+
+    /**
+     * Find the tests that are not affected by the changes since deps.graph was written, and the changed classes.
+     *
+     * @param artifactsDir The directory in which we store STARTS artifacts
+     * @param cleanBytes   Strip debug info from the class files before hashing them
+     * @param threads      The number of threads on which to hash the classes; the result does not depend on it
+     * @return             The non-affected tests and the URLs of the changed classes, or null on the first run
+     */
+    public static Pair<Set<String>, Set<String>> getChangedData(String artifactsDir, boolean cleanBytes,
+                                                                int threads) {
+        return getChangedData(artifactsDir, cleanBytes, threads, null);
+    }
+
+    /**
+     * Same as getChangedData(artifactsDir, cleanBytes, threads), but the classes in jars are hashed where the
+     * given relocator finds them on the current classpath.
+     *
+     * @param relocator The relocator of tracked jar URLs, or null to hash the tracked URLs
+     */
+    public static Pair<Set<String>, Set<String>> getChangedData(String artifactsDir, boolean cleanBytes,
+                                                                int threads, JarRelocator relocator) {
+        long start = System.currentTimeMillis();
+        File file = new File(artifactsDir, GRAPH_DEPS_FILE);
+        if (!file.exists()) {
+            LOGGER.log(Level.FINEST, "@NoExistingGraphFile. First Run?");
+            return null;
+        }
+        String[] names;
+        List<String> urls = new ArrayList<>();
+        List<Integer> tracked = new ArrayList<>();
+        long[] checksums;
+        int[] testIds;
+        int[] predecessorsOffsets;
+        int[] predecessors;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!in.readUTF().equals(MAGIC)) {
+                throw new IOException("Unexpected " + GRAPH_DEPS_FILE + " format");
+            }
+            names = new String[in.readInt()];
+            testIds = new int[in.readInt()];
+            predecessors = new int[in.readInt()];
+            checksums = new long[names.length];
+            for (int v = 0; v < names.length; v++) {
+                names[v] = in.readUTF();
+                String url = in.readUTF();
+                checksums[v] = in.readLong();
+                if (!url.equals(NO_URL)) {
+                    urls.add(url);
+                    tracked.add(v);
+                }
+            }
+            for (int i = 0; i < testIds.length; i++) {
+                testIds[i] = in.readInt();
+            }
+            predecessorsOffsets = new int[names.length + 1];
+            for (int v = 0; v <= names.length; v++) {
+                predecessorsOffsets[v] = in.readInt();
+            }
+            for (int i = 0; i < predecessors.length; i++) {
+                predecessors[i] = in.readInt();
+            }
+        } catch (IOException ioe) {
+            // without the graph every test has to be run
+            LOGGER.log(Level.WARNING, "Ignoring unreadable " + GRAPH_DEPS_FILE + " file", ioe);
+            return null;
+        }
+        CheckSumCache cache = CheckSumCache.load(artifactsDir, cleanBytes);
+        String[] newCheckSums = relocator == null ? ChecksumUtil.computeCheckSums(urls, cleanBytes, threads, cache)
+                : relocator.computeCheckSums(urls, cleanBytes, threads, cache);
+        cache.save(artifactsDir);
+        Set<String> changedClasses = new HashSet<>();
+        BitSet affected = new BitSet(names.length);
+        int[] stack = new int[16];
+        int size = 0;
+        for (int i = 0; i < urls.size(); i++) {
+            int vertex = tracked.get(i);
+            if (Long.parseLong(newCheckSums[i]) != checksums[vertex]) {
+                changedClasses.add(urls.get(i));
+                if (!affected.get(vertex)) {
+                    affected.set(vertex);
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = vertex;
+                }
+            }
+        }
+        // everything that reaches a changed class is affected by the change
+        while (size > 0) {
+            int vertex = stack[--size];
+            for (int i = predecessorsOffsets[vertex]; i < predecessorsOffsets[vertex + 1]; i++) {
+                int predecessor = predecessors[i];
+                if (!affected.get(predecessor)) {
+                    affected.set(predecessor);
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = predecessor;
+                }
+            }
+        }
+        Set<String> nonAffected = new HashSet<>();
+        for (int testId : testIds) {
+            if (!affected.get(testId)) {
+                nonAffected.add(names[testId]);
+            }
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "AFFECTED VERTICES: " + affected.cardinality() + " of " + names.length);
+        LOGGER.log(Level.FINEST, TIME_COMPUTING_NON_AFFECTED + (end - start) + MILLISECOND);
+        return new Pair<>(nonAffected, changedClasses);
+    }
+}
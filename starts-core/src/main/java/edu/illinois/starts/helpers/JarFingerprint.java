@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.util.Pair;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Computes the fingerprints of the jars on the classpath that are stored in the jar-checksums file. A jar
+ * whose size and modification time are the same as on the previous run keeps its fingerprint without being
+ * read. Otherwise the fingerprint is the MD5 hash of the central directory of the jar, which holds the name,
+ * size and CRC-32 of every entry, so it changes whenever an entry does, at the cost of reading a few KB
+ * instead of the whole jar. Jars that are not plain zip files are hashed in full as before, and so is every
+ * jar in the full-hash mode, which does not trust the size and modification time either. Like in the checksum
+ * cache, a jar that was modified too close to the time at which it was fingerprinted is always read again,
+ * because a second write within the resolution of the modification time would not change it.
+ *
+ * <p>In the jar-checksums file, the fingerprint is followed by the size and the modification time of the
+ * jar, and by the time at which it was fingerprinted: "path,fingerprint,size,lastModified,fingerprintedAt".
+ * Readers of the older "path,checksum" lines see the same first
+ * two fields, and the checksums of those lines are compared with the full hash of the jars, so upgrading does
+ * not make every jar look changed.
+ */
+public class JarFingerprint implements StartsConstants {
+    private static final String CENTRAL_DIRECTORY_PREFIX = "cd:";
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final long ZIP64_MARKER = 0xffffffffL;
+    private static final long RACY_MILLIS = 2000;
+    private static final int BUFFER_SIZE = 65536 * 2;
+    // every thread reads all of its jars through one direct buffer, which must hold the end of a zip file
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer
+            .allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+
+    private JarFingerprint() {
+    }
+
+    /**
+     * Get the fingerprints of the jars on a classpath, on the given number of threads.
+     *
+     * @param jars     The paths of the jars
+     * @param oldLines The fields of the lines in the previous jar-checksums file, by jar
+     * @param fullHash Always hash the whole jars, even if they look unchanged
+     * @param threads  The number of threads on which to fingerprint the jars
+     * @return         The fingerprints, in the same order as the jars
+     * @see #getFingerprint(String, String[], boolean)
+     */
+    public static List<Pair<String, String>> getFingerprints(List<String> jars, Map<String, String[]> oldLines,
+                                                             boolean fullHash, int threads) {
+        List<Pair<String, String>> fingerprints = new ArrayList<>(Collections.nCopies(jars.size(), null));
+        if (threads <= 1 || jars.size() <= 1) {
+            for (int i = 0; i < fingerprints.size(); i++) {
+                fingerprints.set(i, getFingerprint(jars.get(i), oldLines.get(jars.get(i)), fullHash));
+            }
+            return fingerprints;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // one task per jar, since the size of jars varies too much for batches to be even
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < fingerprints.size(); i++) {
+                int index = i;
+                tasks.add(executor.submit(() -> {
+                    String jar = jars.get(index);
+                    fingerprints.set(index, getFingerprint(jar, oldLines.get(jar), fullHash));
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        } catch (ExecutionException ee) {
+            throw new RuntimeException(ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Get the fingerprint of a jar, reusing the one from the previous run if the jar looks unchanged.
+     *
+     * @param jar      The path of the jar
+     * @param oldLine  The fields of the line of the jar in the previous jar-checksums file, or null
+     * @param fullHash Always hash the whole jar, even if it looks unchanged
+     * @return         The jar and the "fingerprint,size,lastModified,fingerprintedAt" value to store for it
+     */
+    public static Pair<String, String> getFingerprint(String jar, String[] oldLine, boolean fullHash) {
+        File file = new File(jar);
+        long size = file.length();
+        long lastModified = file.lastModified();
+        String metadata = COMMA + size + COMMA + lastModified;
+        if (!fullHash && oldLine != null && oldLine.length == 5 && metadata.equals(COMMA + oldLine[2] + COMMA
+                + oldLine[3]) && lastModified < parseTime(oldLine[4]) - RACY_MILLIS) {
+            return new Pair<>(jar, oldLine[1] + metadata + COMMA + oldLine[4]);
+        }
+        long fingerprintedAt = System.currentTimeMillis();
+        String fingerprint = fullHash ? null : hashCentralDirectory(file);
+        if (fingerprint == null) {
+            fingerprint = Writer.getJarToChecksumMapping(jar).getValue();
+        }
+        return new Pair<>(jar, fingerprint + metadata + COMMA + fingerprintedAt);
+    }
+
+    private static long parseTime(String time) {
+        try {
+            return Long.parseLong(time);
+        } catch (NumberFormatException nfe) {
+            // a broken time is never trusted
+            return 0;
+        }
+    }
+
+    /**
+     * Check if a jar is the same as when the line of the previous jar-checksums file was written. If that line
+     * holds the other kind of fingerprint, because it was written by an older version, with the other value of
+     * fullHash, or without fingerprints, the jar is hashed once more in the same way as the old line.
+     *
+     * @param jar     The path of the jar
+     * @param oldLine The fields of the line of the jar in the previous jar-checksums file, or null
+     * @param value   The value returned by getFingerprint for the jar
+     * @return        true if the jar did not change
+     */
+    public static boolean isUnchanged(String jar, String[] oldLine, String value) {
+        if (oldLine == null || oldLine.length < 2) {
+            return false;
+        }
+        String checksum = getChecksum(value);
+        if (checksum.equals(oldLine[1])) {
+            return true;
+        }
+        boolean oldCentralDirectory = oldLine[1].startsWith(CENTRAL_DIRECTORY_PREFIX);
+        if (oldCentralDirectory == checksum.startsWith(CENTRAL_DIRECTORY_PREFIX)) {
+            return false;
+        }
+        String oldKind = oldCentralDirectory ? hashCentralDirectory(new File(jar))
+                : Writer.getJarToChecksumMapping(jar).getValue();
+        return oldLine[1].equals(oldKind);
+    }
+
+    /**
+     * Check if the value to store for a jar differs from its line in the previous jar-checksums file, so that
+     * the file should be written again even if the jar did not change.
+     */
+    public static boolean isNewValue(String[] oldLine, String value) {
+        return oldLine == null || !value.equals(String.join(COMMA, Arrays.copyOfRange(oldLine, 1,
+                oldLine.length)));
+    }
+
+    /**
+     * Get the fingerprint from a value returned by getFingerprint, or from an older "checksum" value.
+     */
+    public static String getChecksum(String value) {
+        int comma = value.indexOf(COMMA);
+        return comma < 0 ? value : value.substring(0, comma);
+    }
+
+    /**
+     * Hash the central directory of a zip file.
+     *
+     * @return The fingerprint, or null if the file is not a zip file that this method can read
+     */
+    static String hashCentralDirectory(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int tailSize = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+            ByteBuffer tail = BUFFERS.get();
+            tail.clear().limit(tailSize);
+            while (tail.hasRemaining()) {
+                if (channel.read(tail, size - tailSize + tail.position()) < 0) {
+                    return null;
+                }
+            }
+            // the end of central directory record is followed by a comment of at most 64 KB
+            int end = -1;
+            for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0 && end < 0; i--) {
+                if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                    end = i;
+                }
+            }
+            if (end < 0) {
+                return null;
+            }
+            long directorySize = tail.getInt(end + 12) & ZIP64_MARKER;
+            long directoryOffset = tail.getInt(end + 16) & ZIP64_MARKER;
+            if (directorySize == ZIP64_MARKER || directoryOffset == ZIP64_MARKER
+                    || directoryOffset + directorySize > size) {
+                return null;
+            }
+            return CENTRAL_DIRECTORY_PREFIX + md5(channel, directoryOffset, directorySize);
+        } catch (IOException ioe) {
+            return null;
+        } catch (NoSuchAlgorithmException nsae) {
+            nsae.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Hash a part of a file, reading it through the direct buffer of the current thread.
+     *
+     * @return The MD5 hash, in hexadecimal
+     */
+    static String md5(FileChannel channel, long position, long length) throws IOException, NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        ByteBuffer buffer = BUFFERS.get();
+        long end = position + length;
+        for (long next = position; next < end; ) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - next));
+            int read = channel.read(buffer, next);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at " + next);
+            }
+            next += read;
+            buffer.flip();
+            md.update(buffer);
+        }
+        return Hex.encodeHexString(md.digest());
+    }
+}
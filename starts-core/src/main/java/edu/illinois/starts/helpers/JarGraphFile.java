@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.DependencyGraph;
+import edu.illinois.starts.util.Logger;
+
+/**
+ * Reads and writes the cached dependency graph of a third-party jar in a binary format. The file starts with
+ * the line "BGRAPH", followed by the number of class names and of edges, the edges as pairs of int indices
+ * into the table of class names, and the table of class names itself. Every class name and every edge is
+ * stored once. Reading copies the file into a heap buffer, and every class name is decoded once when the
+ * edges are added to a graph. The file is not mapped, because a mapped file stays open until the mapping is
+ * garbage collected, and on Windows an open graph could then neither be evicted from the cache nor replaced
+ * by another build.
+ */
+public class JarGraphFile implements StartsConstants {
+    public static final String BINARY_GRAPH_EXTENSION = ".bgraph";
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final byte[] MAGIC = "BGRAPH\n".getBytes(StandardCharsets.UTF_8);
+    private static final int HEADER_SIZE = MAGIC.length + 2 * Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int namesCount;
+    private final int edgesCount;
+
+    public JarGraphFile(File file) throws IOException {
+        buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        byte[] start = new byte[MAGIC.length];
+        buffer.get(start);
+        if (!Arrays.equals(MAGIC, start)) {
+            throw new IOException("Not a binary graph file: " + file);
+        }
+        namesCount = buffer.getInt();
+        edgesCount = buffer.getInt();
+    }
+
+    public int getNamesCount() {
+        return namesCount;
+    }
+
+    public int getEdgesCount() {
+        return edgesCount;
+    }
+
+    /**
+     * Add all the edges of the jar to a graph builder, looking up every class name only once.
+     *
+     * @param builder The builder of the dependency graph
+     */
+    public void addTo(DependencyGraph.Builder builder) {
+        String[] names = readNames();
+        int[] ids = new int[namesCount];
+        for (int i = 0; i < namesCount; i++) {
+            ids[i] = builder.addVertex(names[i]);
+        }
+        for (int i = 0; i < edgesCount; i++) {
+            int position = HEADER_SIZE + i * 2 * Integer.BYTES;
+            builder.addEdge(ids[buffer.getInt(position)], ids[buffer.getInt(position + Integer.BYTES)]);
+        }
+    }
+
+    /**
+     * Get the edges of the jar as lines of the text format, in which the source and destination of every
+     * edge are separated by a space.
+     */
+    public List<String> toLines() {
+        String[] names = readNames();
+        List<String> lines = new ArrayList<>(edgesCount);
+        for (int i = 0; i < edgesCount; i++) {
+            int position = HEADER_SIZE + i * 2 * Integer.BYTES;
+            lines.add(names[buffer.getInt(position)] + WHITE_SPACE + names[buffer.getInt(position + Integer.BYTES)]);
+        }
+        return lines;
+    }
+
+    /**
+     * Write the dependencies of the classes in a jar, without duplicate names or edges.
+     *
+     * @param deps A map from each class to the classes that it depends on
+     * @param file The file to write
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(Map<String, Set<String>> deps, File file) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        ByteArrayOutputStream edges = new ByteArrayOutputStream();
+        int edgesCount = 0;
+        try (DataOutputStream edgesOut = new DataOutputStream(edges)) {
+            for (Map.Entry<String, Set<String>> entry : deps.entrySet()) {
+                int source = getId(entry.getKey(), ids, names);
+                for (String dep : entry.getValue()) {
+                    edgesOut.writeInt(source);
+                    edgesOut.writeInt(getId(dep, ids, names));
+                    edgesCount++;
+                }
+            }
+        }
+        // write to a temporary file first, so that a concurrent reader never reads a partial file
+        final int count = edgesCount;
+        FileUtil.writeAtomically(file, out -> {
+            out.write(MAGIC);
+            out.writeInt(names.size());
+            out.writeInt(count);
+            edges.writeTo(out);
+            for (String name : names) {
+                ZLCBinaryFile.writeString(out, name);
+            }
+        });
+    }
+
+    /**
+     * Convert a cached graph in the text format, with one "source destination" edge per line, to the binary
+     * format. Duplicate edges are dropped and lines that are not edges are skipped.
+     *
+     * @param textFile   The .graph file
+     * @param binaryFile The .bgraph file to write
+     * @throws IOException If a file cannot be read or written
+     */
+    public static void migrate(File textFile, File binaryFile) throws IOException {
+        Map<String, Set<String>> deps = new HashMap<>();
+        for (String line : Files.readAllLines(textFile.toPath(), Charset.defaultCharset())) {
+            String[] parts = line.split(WHITE_SPACE);
+            if (parts.length != 2) {
+                LOGGER.log(Level.SEVERE, "@@BrokenEdge: " + line);
+                continue;
+            }
+            deps.computeIfAbsent(parts[0], k -> new HashSet<>()).add(parts[1]);
+        }
+        write(deps, binaryFile);
+        LOGGER.log(Level.FINEST, "@@MigratedGraph: " + textFile.getAbsolutePath());
+    }
+
+    private String[] readNames() {
+        String[] names = new String[namesCount];
+        ByteBuffer table = buffer.duplicate();
+        table.position(HEADER_SIZE + edgesCount * 2 * Integer.BYTES);
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < namesCount; i++) {
+            int length = ZLCBinaryFile.readVarInt(table);
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            table.get(bytes, 0, length);
+            names[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    private static int getId(String name, Map<String, Integer> ids, List<String> names) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.illinois.starts.util.CheckSumCache;
+import edu.illinois.starts.util.ChecksumUtil;
+import edu.illinois.starts.util.ClassPathIndex;
+
+/**
+ * Maps the URLs of third-party classes that were tracked on an earlier run, such as
+ * "jar:file:/m2/guava-30.jar!/com/google/common/base/Optional.class", to where the current classpath loads
+ * the same class from. When a jar is upgraded, its old version usually stays in the local repository, so
+ * hashing the tracked URL would not see the change; hashing the class where it is loaded from now does.
+ * A class that no jar on the current classpath has anymore gets the checksum "-1", like a deleted class
+ * file, so the tests that reach it are affected; a class whose bytes are the same in the new jar is not.
+ */
+public class JarRelocator {
+    private static final String JAR_PREFIX = "jar:";
+    private static final String JAR_SEPARATOR = "!/";
+    private static final String MISSING = "-1";
+
+    private final ClassPathIndex index;
+
+    public JarRelocator(ClassLoader loader) {
+        this(ClassPathIndex.create(loader));
+    }
+
+    public JarRelocator(ClassPathIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Get the URL from which the current classpath loads a tracked class.
+     *
+     * @param url The tracked URL
+     * @return    The current URL of the class if the tracked URL is in a jar, the tracked URL otherwise, or
+     *            null if no jar on the current classpath has the class
+     */
+    public String relocate(String url) {
+        int separator = url.indexOf(JAR_SEPARATOR);
+        if (!url.startsWith(JAR_PREFIX) || separator < 0) {
+            return url;
+        }
+        return index.getLocation(url.substring(separator + JAR_SEPARATOR.length()));
+    }
+
+    /**
+     * Compute the checksums of tracked classes where the current classpath loads them from.
+     *
+     * @return The checksums, in the same order as the tracked URLs
+     * @see ChecksumUtil#computeCheckSums(List, boolean, int, CheckSumCache)
+     */
+    public String[] computeCheckSums(List<String> urls, boolean cleanBytes, int threads, CheckSumCache cache) {
+        List<String> found = new ArrayList<>(urls.size());
+        String[] relocated = new String[urls.size()];
+        for (int i = 0; i < urls.size(); i++) {
+            relocated[i] = relocate(urls.get(i));
+            if (relocated[i] != null) {
+                found.add(relocated[i]);
+            }
+        }
+        String[] foundCheckSums = ChecksumUtil.computeCheckSums(found, cleanBytes, threads, cache);
+        String[] checksums = new String[urls.size()];
+        int next = 0;
+        for (int i = 0; i < urls.size(); i++) {
+            checksums[i] = relocated[i] == null ? MISSING : foundCheckSums[next++];
+        }
+        return checksums;
+    }
+}
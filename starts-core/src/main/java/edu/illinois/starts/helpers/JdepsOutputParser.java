@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.illinois.starts.constants.StartsConstants;
+
+/**
+ * A Writer that parses the output of "jdeps -v" line by line as jdeps writes it, and adds every edge to a
+ * map from each class to the classes that it depends on. Only the current line is buffered, and every
+ * class name is stored once however many edges it is in, so the memory used while jdeps runs is bounded
+ * by the size of the resulting map rather than by the size of the text.
+ */
+public class JdepsOutputParser extends java.io.Writer implements StartsConstants {
+    private static final String ARROW = "->";
+
+    private final Map<String, Set<String>> deps = new HashMap<>();
+    private final Map<String, String> names = new HashMap<>();
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Get the dependencies parsed so far; the last line is only parsed once the writer is closed.
+     */
+    public Map<String, Set<String>> getDeps() {
+        return deps;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        int start = off;
+        for (int i = off; i < off + len; i++) {
+            if (cbuf[i] == '\n') {
+                line.append(cbuf, start, i - start);
+                parseLine();
+                start = i + 1;
+            }
+        }
+        line.append(cbuf, start, off + len - start);
+    }
+
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        int start = off;
+        int newline = str.indexOf('\n', start);
+        while (newline >= 0 && newline < off + len) {
+            line.append(str, start, newline);
+            parseLine();
+            start = newline + 1;
+            newline = str.indexOf('\n', start);
+        }
+        line.append(str, start, off + len);
+    }
+
+    @Override
+    public void flush() {
+        // jdeps may flush in the middle of a line, so a line is only parsed when it ends
+    }
+
+    @Override
+    public void close() {
+        // the output may not end with a line separator
+        if (line.length() > 0) {
+            parseLine();
+        }
+    }
+
+    /**
+     * Parse a line such as "   a.b.C   -> a.b.D   module", skipping the lines that give the dependencies of
+     * a whole classes directory or jar.
+     */
+    private void parseLine() {
+        int arrow = line.indexOf(ARROW);
+        if (arrow >= 0) {
+            int leftStart = skipWhitespace(0);
+            String left = line.substring(leftStart, Math.max(leftStart, trimEnd(arrow)));
+            if (!left.startsWith(CLASSES) && !left.startsWith(TEST_CLASSES) && !left.endsWith(JAR_EXTENSION)) {
+                int rightStart = skipWhitespace(arrow + ARROW.length());
+                int rightEnd = rightStart;
+                while (rightEnd < line.length() && !Character.isWhitespace(line.charAt(rightEnd))) {
+                    rightEnd++;
+                }
+                // a line cut off right after the arrow has no dependency
+                if (!left.isEmpty() && rightEnd > rightStart) {
+                    String right = line.substring(rightStart, rightEnd);
+                    deps.computeIfAbsent(intern(left), k -> new HashSet<>()).add(intern(right));
+                }
+            }
+        }
+        line.setLength(0);
+    }
+
+    private int skipWhitespace(int index) {
+        while (index < line.length() && Character.isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private int trimEnd(int index) {
+        while (index > 0 && Character.isWhitespace(line.charAt(index - 1))) {
+            index--;
+        }
+        return index;
+    }
+
+    private String intern(String name) {
+        String existing = names.putIfAbsent(name, name);
+        return existing == null ? name : existing;
+    }
+}
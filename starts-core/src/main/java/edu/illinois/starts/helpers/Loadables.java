@@ -8,7 +8,6 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -16,10 +15,11 @@ import java.util.Set;
 import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.DependencyGraph;
+import edu.illinois.starts.data.TransitiveClosure;
+import edu.illinois.starts.enums.DependencyExtractor;
 import edu.illinois.starts.util.ChecksumUtil;
 import edu.illinois.starts.util.Logger;
-import edu.illinois.yasgl.DirectedGraph;
-import edu.illinois.yasgl.DirectedGraphBuilder;
 import org.ekstazi.util.Types;
 
 /**
@@ -30,44 +30,52 @@ public class Loadables implements StartsConstants {
 
     Map<String, Set<String>> deps;
     List<String> extraEdges;
+    List<JarGraphFile> jarGraphs;
     private final List<String> classesToAnalyze;
     private final File cache;
     private final String testClassPathElementsString;
-    private DirectedGraph<String> graph;
-    private Map<String, Set<String>> transitiveClosure;
+    private DependencyGraph graph;
+    private TransitiveClosure transitiveClosure;
     private Set<String> unreached;
     private final boolean filterLib;
     private final boolean useThirdParty;
     private List<String> testClassPathElements;
     private final String artifactsDir;
+    private final DependencyExtractor depExtractor;
+    private final int extractorThreads;
+    private final boolean incrementalDeps;
+    private final int closureThreads;
 
     public Loadables(List<String> classesToAnalyze, String artifactsDir, String testClassPathElementsString,
-                     boolean useThirdParty, boolean filterLib, File cache) {
+                     boolean useThirdParty, boolean filterLib, File cache, DependencyExtractor depExtractor,
+                     int extractorThreads, boolean incrementalDeps, int closureThreads) {
         this.classesToAnalyze = classesToAnalyze;
         this.artifactsDir = artifactsDir;
         this.testClassPathElementsString = testClassPathElementsString;
         this.filterLib = filterLib;
         this.cache = cache;
         this.useThirdParty = useThirdParty;
+        this.depExtractor = depExtractor;
+        this.extractorThreads = extractorThreads;
+        this.incrementalDeps = incrementalDeps;
+        this.closureThreads = closureThreads;
     }
 
-    public static Map<String, Set<String>> getTransitiveClosurePerClass(DirectedGraph<String> tcGraph,
-                                                                  List<String> classesToAnalyze) {
-        Map<String, Set<String>> tcPerTest = new HashMap<>();
-        for (String test : classesToAnalyze) {
-            Set<String> deps = YasglHelper.computeReachabilityFromChangedClasses(
-                    new HashSet<>(Collections.singletonList(test)), tcGraph);
-            deps.add(test);
-            tcPerTest.put(test, deps);
-        }
-        return tcPerTest;
+    public static TransitiveClosure getTransitiveClosurePerClass(DependencyGraph tcGraph,
+                                                                 List<String> classesToAnalyze) {
+        return getTransitiveClosurePerClass(tcGraph, classesToAnalyze, 1);
+    }
+
+    public static TransitiveClosure getTransitiveClosurePerClass(DependencyGraph tcGraph,
+                                                                 List<String> classesToAnalyze, int threads) {
+        return TransitiveClosure.compute(tcGraph, classesToAnalyze, threads);
     }
 
-    public DirectedGraph<String> getGraph() {
+    public DependencyGraph getGraph() {
         return graph;
     }
 
-    public Map<String, Set<String>> getTransitiveClosure() {
+    public TransitiveClosure getTransitiveClosure() {
         return transitiveClosure;
     }
 
@@ -91,17 +99,37 @@ public class Loadables implements StartsConstants {
 
     public Loadables create(List<String> moreEdges, List<String> testClassPathElements,
                             boolean computeUnreached) {
+        return create(moreEdges, testClassPathElements, computeUnreached, true);
+    }
+
+    public Loadables create(List<String> moreEdges, List<String> testClassPathElements,
+                            boolean computeUnreached, boolean computeClosure) {
+        return create(moreEdges, Collections.emptyList(), testClassPathElements, computeUnreached, computeClosure);
+    }
+
+    /**
+     * Build the dependency graph and, if computeClosure is true, the transitive closure of every test. The
+     * unreached classes can only be computed from the closure.
+     *
+     * @param moreEdges  Extra edges, in the text format of the jdeps cache
+     * @param jarGraphs  The cached graphs of third-party jars, which are added to the graph as they are
+     */
+    public Loadables create(List<String> moreEdges, List<JarGraphFile> jarGraphs, List<String> testClassPathElements,
+                            boolean computeUnreached, boolean computeClosure) {
         setTestClassPathElements(testClassPathElements);
         LOGGER.log(Level.FINEST, "More: " + moreEdges.size());
         extraEdges = moreEdges;
+        this.jarGraphs = jarGraphs;
         long startTime = System.currentTimeMillis();
         deps = getDepMap(testClassPathElementsString, classesToAnalyze);
         long jdepsTime = System.currentTimeMillis();
-        graph = makeGraph(deps, extraEdges);
+        graph = makeGraph(deps, extraEdges, jarGraphs);
         long graphBuildingTime = System.currentTimeMillis();
-        transitiveClosure = getTransitiveClosurePerClass(graph, classesToAnalyze);
+        if (computeClosure) {
+            transitiveClosure = getTransitiveClosurePerClass(graph, classesToAnalyze, closureThreads);
+        }
         long transitiveClosureTime = System.currentTimeMillis();
-        if (computeUnreached) {
+        if (computeUnreached && computeClosure) {
             unreached = findUnreached(deps, transitiveClosure);
             LOGGER.log(Level.INFO, "UNREACHED(count): " + unreached.size());
         }
@@ -115,8 +143,8 @@ public class Loadables implements StartsConstants {
         LOGGER.log(Level.FINE, "[PROFILE] createLoadable(findUnreached): "
                 + Writer.millsToSeconds(endTime - findUnreachedTime));
         LOGGER.log(Level.FINE, "[PROFILE] createLoadable(TOTAL): " + Writer.millsToSeconds(endTime - startTime));
-        LOGGER.log(Level.INFO, "STARTS:Nodes: " + graph.getVertices().size());
-        LOGGER.log(Level.INFO, "STARTS:Edges: " + graph.getEdges().size());
+        LOGGER.log(Level.INFO, "STARTS:Nodes: " + graph.getVerticesCount());
+        LOGGER.log(Level.INFO, "STARTS:Edges: " + graph.getEdgesCount());
         return this;
     }
 
@@ -128,7 +156,7 @@ public class Loadables implements StartsConstants {
      * @return          The set of types that are not reachable by any test in the graph.
      */
     private Set<String> findUnreached(Map<String, Set<String>> deps,
-                                      Map<String, Set<String>> testDeps) {
+                                      TransitiveClosure testDeps) {
         Set<String> allClasses = new HashSet<>();
         for (String loc : deps.keySet()) {
             // 1. jdeps finds no dependencies for a class if the class' dependencies were not analyzed (e.g., no -R)
@@ -145,24 +173,25 @@ public class Loadables implements StartsConstants {
             }
         }
         LOGGER.log(Level.INFO, "ALL(count): " + allClasses.size());
-        Set<String> reached = new HashSet<>(testDeps.keySet());
-        for (String test : testDeps.keySet()) {
-            reached.addAll(testDeps.get(test));
-        }
+        Set<String> reached = testDeps.getGraph().toNames(testDeps.getReached());
+        reached.addAll(testDeps.keySet());
         // remove the reached classes from allClasses to get the unreached classes.
         allClasses.removeAll(reached);
         return allClasses;
     }
 
-    private DirectedGraph<String> makeGraph(Map<String, Set<String>> deps,
-                                            List<String> moreEdges) {
-        DirectedGraphBuilder<String> builder = getBuilderFromDeps(deps);
+    private DependencyGraph makeGraph(Map<String, Set<String>> deps,
+                                      List<String> moreEdges, List<JarGraphFile> jarGraphs) {
+        DependencyGraph.Builder builder = getBuilderFromDeps(deps);
         addEdgesToGraphBuilder(builder, moreEdges);
+        for (JarGraphFile jarGraph : jarGraphs) {
+            jarGraph.addTo(builder);
+        }
         return builder.build();
     }
 
-    private DirectedGraphBuilder<String> getBuilderFromDeps(Map<String, Set<String>> deps) {
-        DirectedGraphBuilder<String> builder = new DirectedGraphBuilder<>();
+    private DependencyGraph.Builder getBuilderFromDeps(Map<String, Set<String>> deps) {
+        DependencyGraph.Builder builder = new DependencyGraph.Builder();
         for (String key : deps.keySet()) {
             for (String dep : deps.get(key)) {
                 builder.addEdge(key, dep);
@@ -177,44 +206,55 @@ public class Loadables implements StartsConstants {
             //There are no test classes, no need to waste time with jdeps
             return null;
         }
-        List<String> args = new ArrayList<>(Collections.singletonList("-v"));
-        if (filterLib) {
-            // TODO: We need a cleaner/generic way to add filters
-            args.addAll(Arrays.asList("-filter", "java.*|sun.*"));
-        }
         List<String> localPaths = getClasspathWithNoJars();
         if (localPaths.isEmpty()) {
             throw new IllegalArgumentException("JDEPS cannot run with an empty classpath.");
         }
-        String jdepsClassPath;
-        if ((!cache.exists() || (cache.isDirectory() && cache.list().length == 0)) && useThirdParty) {
-            //There is no cache of jdeps graphs, so we want to run jdeps recursively with the entire surefire classpath
+        boolean recursive = (!cache.exists() || (cache.isDirectory() && cache.list().length == 0)) && useThirdParty;
+        if (recursive) {
+            //There is no cache of jdeps graphs, so we want to analyze the entire surefire classpath
             LOGGER.log(Level.WARNING, "Should jdeps cache really be empty? Running in recursive mode.");
-            args.add("-R");
-            jdepsClassPath = pathToUse;
+        }
+        Map<String, Set<String>> depMap;
+        if (depExtractor == DependencyExtractor.ASM && incrementalDeps && !recursive) {
+            // Only re-extract the edges of class files that changed since the last run
+            depMap = ClassDepsHelper.updateDepMap(artifactsDir, localPaths, filterLib);
+        } else if (depExtractor == DependencyExtractor.ASM) {
+            // Without jdeps' "-R" there is no way to find only the jar classes that are reached, so
+            // recursive mode reads every class on the classpath
+            List<String> paths = recursive ? Arrays.asList(pathToUse.split(File.pathSeparator)) : localPaths;
+            depMap = ASMHelper.runASM(paths, filterLib, extractorThreads);
         } else {
-            jdepsClassPath = Writer.pathToString(localPaths);
+            List<String> args = new ArrayList<>(Collections.singletonList("-v"));
+            if (filterLib) {
+                args.addAll(Arrays.asList("-filter", LIB_FILTER));
+            }
+            String jdepsClassPath;
+            if (recursive) {
+                args.add("-R");
+                jdepsClassPath = pathToUse;
+            } else {
+                jdepsClassPath = Writer.pathToString(localPaths);
+            }
+            args.addAll(Arrays.asList("-cp", jdepsClassPath));
+            args.addAll(localPaths);
+            LOGGER.log(Level.FINEST, "JDEPS CMD: " + args);
+            depMap = RTSUtil.runJdeps(args);
         }
-        args.addAll(Arrays.asList("-cp", jdepsClassPath));
-        args.addAll(localPaths);
-        LOGGER.log(Level.FINEST, "JDEPS CMD: " + args);
-        Map<String, Set<String>> depMap = RTSUtil.runJdeps(args);
         if (LOGGER.getLoggingLevel().intValue() == Level.FINEST.intValue()) {
             Writer.writeMapToFile(depMap, artifactsDir + File.separator + "jdeps-out");
         }
         return depMap;
     }
 
-    private void addEdgesToGraphBuilder(DirectedGraphBuilder<String> builder, List<String> edges) {
+    private void addEdgesToGraphBuilder(DependencyGraph.Builder builder, List<String> edges) {
         for (String edge : edges) {
             String[] parts = edge.split(WHITE_SPACE);
             if (parts.length != 2) {
                 LOGGER.log(Level.SEVERE, "@@BrokenEdge: " + edge);
                 continue;
             }
-            String src = parts[0].intern();
-            String dest = parts[1].intern();
-            builder.addEdge(src, dest);
+            builder.addEdge(parts[0], parts[1]);
         }
     }
 
@@ -7,12 +7,12 @@ package edu.illinois.starts.helpers;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -24,6 +24,7 @@ import java.util.Set;
 import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.DependencyGraph;
 import edu.illinois.starts.data.ZLCData;
 import edu.illinois.starts.data.ZLCFileContent;
 import edu.illinois.starts.data.ZLCFormat;
@@ -31,7 +32,6 @@ import edu.illinois.starts.util.Logger;
 import edu.illinois.starts.util.Pair;
 import edu.illinois.yasgl.DirectedGraph;
 import edu.illinois.yasgl.Edge;
-import org.apache.commons.codec.binary.Hex;
 
 /**
  * Utility methods for writing various data to file.
@@ -65,6 +65,14 @@ public class Writer implements StartsConstants {
     }
 
     public static void writeToFile(ZLCFileContent zlcFileContent, String filename) {
+        if (zlcFileContent.getFormat() == ZLCFormat.BINARY) {
+            try {
+                ZLCBinaryFile.write(zlcFileContent, filename);
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+            return;
+        }
         try (BufferedWriter writer = getWriter(filename)) {
             writer.write(zlcFileContent.getFormat() + System.lineSeparator());
             if (zlcFileContent.getFormat() == ZLCFormat.INDEXED) {
@@ -155,6 +163,34 @@ public class Writer implements StartsConstants {
         }
     }
 
+    /**
+     * Write the edges of a DependencyGraph to file, in the same format as writeGraph(DirectedGraph, ...).
+     *
+     * @param graph         The graph that we want to write
+     * @param artifactsDir  The directory in which we are writing STARTS artifacts
+     * @param print         Write graph to file if true
+     * @param graphFile     The file in which to optionally write the graph
+     */
+    public static void writeGraph(DependencyGraph graph, String artifactsDir, boolean print, String graphFile) {
+        if (print) {
+            String outFilename = artifactsDir + File.separator + graphFile;
+            try (BufferedWriter writer = getWriter(outFilename)) {
+                if (graph == null) {
+                    writer.write(EMPTY);
+                    return;
+                }
+                for (int id = 0; id < graph.getVerticesCount(); id++) {
+                    for (int i = 0; i < graph.getOutDegree(id); i++) {
+                        writer.write(graph.getName(id) + WHITE_SPACE + graph.getName(graph.getSuccessor(id, i))
+                                + System.lineSeparator());
+                    }
+                }
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+    }
+
     public static void writeDepsToFile(Map<String, Set<String>> deps, String fileName) {
         try (BufferedWriter writer = getWriter(fileName)) {
             for (String key : deps.keySet()) {
@@ -255,18 +291,8 @@ public class Writer implements StartsConstants {
      */
     public static Pair<String, String> getJarToChecksumMapping(String jar) {
         Pair<String, String> pair = new Pair<>(jar, "-1");
-        byte[] bytes;
-        int bufSize = 65536 * 2;
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            InputStream is = Files.newInputStream(Paths.get(jar));
-            bytes = new byte[bufSize];
-            int size = is.read(bytes, 0, bufSize);
-            while (size >= 0) {
-                md.update(bytes, 0, size);
-                size = is.read(bytes, 0, bufSize);
-            }
-            pair.setValue(Hex.encodeHexString(md.digest()));
+        try (FileChannel channel = FileChannel.open(Paths.get(jar), StandardOpenOption.READ)) {
+            pair.setValue(JarFingerprint.md5(channel, 0, channel.size()));
         } catch (IOException ioe) {
             ioe.printStackTrace();
         } catch (NoSuchAlgorithmException nsae) {
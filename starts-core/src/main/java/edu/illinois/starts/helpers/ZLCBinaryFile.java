@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import edu.illinois.starts.data.ZLCData;
+import edu.illinois.starts.data.ZLCFileContent;
+import edu.illinois.starts.data.ZLCFormat;
+
+/**
+ * Reads and writes the .zlc file in the BINARY format. The file starts with the line "BINARY", followed by
+ * a header with the number of tests and rows and the offsets of each section, the checksums of all rows
+ * as fixed-width longs, the string tables of test names and URLs, and for each row its tests, either as
+ * sorted delta-encoded varint indices or as a bitmap, whichever is smaller (like the array and bitmap
+ * containers of Roaring bitmaps). Reading loads the file into one heap buffer and only decodes a string when
+ * it is asked for, so iterating over the rows allocates nothing per row. The file is not memory-mapped, since
+ * a mapping is only released when it is garbage collected, and Windows does not let the file be overwritten
+ * while it is mapped.
+ */
+public class ZLCBinaryFile {
+    private static final byte[] MAGIC = (ZLCFormat.BINARY + "\n").getBytes(StandardCharsets.UTF_8);
+    private static final int HEADER_SIZE = MAGIC.length + 5 * Integer.BYTES;
+    private static final int ARRAY_CONTAINER = 0;
+    private static final int BITMAP_CONTAINER = 1;
+
+    private final ByteBuffer buffer;
+    private final ByteBuffer urls;
+    private final ByteBuffer rowTests;
+    private final int testsCount;
+    private final int rowsCount;
+    private final int checksumsOffset;
+    private final int urlsOffset;
+    private final int rowTestsOffset;
+    private final int[] testOffsets;
+    private byte[] scratch = new byte[256];
+    private int[] tests = new int[16];
+    private int row = -1;
+    private int rowTestsCount;
+    private int rowUrlPosition;
+
+    public ZLCBinaryFile(File zlc) throws IOException {
+        buffer = ByteBuffer.wrap(Files.readAllBytes(zlc.toPath()));
+        buffer.position(MAGIC.length);
+        testsCount = buffer.getInt();
+        rowsCount = buffer.getInt();
+        int testsOffset = buffer.getInt();
+        urlsOffset = buffer.getInt();
+        rowTestsOffset = buffer.getInt();
+        checksumsOffset = HEADER_SIZE;
+        // only remember where each test name starts, they are decoded on demand
+        testOffsets = new int[testsCount];
+        buffer.position(testsOffset);
+        for (int i = 0; i < testsCount; i++) {
+            testOffsets[i] = buffer.position();
+            int length = readVarInt(buffer);
+            buffer.position(buffer.position() + length);
+        }
+        urls = buffer.duplicate();
+        rowTests = buffer.duplicate();
+        reset();
+    }
+
+    /**
+     * Check whether a .zlc file is in the BINARY format.
+     *
+     * @param zlc The .zlc file
+     * @return    true if the file starts with the BINARY header
+     * @throws IOException If the file cannot be read
+     */
+    public static boolean isBinary(File zlc) throws IOException {
+        byte[] start = new byte[MAGIC.length];
+        try (InputStream is = Files.newInputStream(zlc.toPath())) {
+            int read = 0;
+            while (read < start.length) {
+                int count = is.read(start, read, start.length - read);
+                if (count < 0) {
+                    return false;
+                }
+                read += count;
+            }
+        }
+        return Arrays.equals(MAGIC, start);
+    }
+
+    public static void write(ZLCFileContent zlcFileContent, String filename) throws IOException {
+        ByteArrayOutputStream testsBytes = new ByteArrayOutputStream();
+        for (String test : zlcFileContent.getTests()) {
+            writeString(testsBytes, test);
+        }
+        ByteArrayOutputStream urlsBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream rowTestsBytes = new ByteArrayOutputStream();
+        for (ZLCData zlcData : zlcFileContent.getZlcData()) {
+            writeString(urlsBytes, zlcData.getUrl().toExternalForm());
+            writeTests(rowTestsBytes, zlcData.getTestsIdx());
+        }
+        int rowsCount = zlcFileContent.getZlcData().size();
+        int testsOffset = HEADER_SIZE + rowsCount * Long.BYTES;
+        int urlsOffset = testsOffset + testsBytes.size();
+        int rowTestsOffset = urlsOffset + urlsBytes.size();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.write(MAGIC);
+            out.writeInt(zlcFileContent.getTestsCount());
+            out.writeInt(rowsCount);
+            out.writeInt(testsOffset);
+            out.writeInt(urlsOffset);
+            out.writeInt(rowTestsOffset);
+            for (ZLCData zlcData : zlcFileContent.getZlcData()) {
+                out.writeLong(Long.parseLong(zlcData.getChecksum()));
+            }
+            testsBytes.writeTo(out);
+            urlsBytes.writeTo(out);
+            rowTestsBytes.writeTo(out);
+        }
+    }
+
+    public int getTestsCount() {
+        return testsCount;
+    }
+
+    public int getRowsCount() {
+        return rowsCount;
+    }
+
+    public String getTest(int idx) {
+        return readString(testOffsets[idx]);
+    }
+
+    /**
+     * Go back to before the first row.
+     */
+    public void reset() {
+        row = -1;
+        urls.position(urlsOffset);
+        rowTests.position(rowTestsOffset);
+    }
+
+    public boolean hasNextRow() {
+        return row + 1 < rowsCount;
+    }
+
+    /**
+     * Move to the next row and decode its tests.
+     */
+    public void nextRow() {
+        row++;
+        rowUrlPosition = urls.position();
+        int urlLength = readVarInt(urls);
+        urls.position(urls.position() + urlLength);
+        int header = readVarInt(rowTests);
+        rowTestsCount = header >>> 1;
+        if (tests.length < rowTestsCount) {
+            tests = new int[Math.max(rowTestsCount, tests.length * 2)];
+        }
+        if ((header & 1) == BITMAP_CONTAINER) {
+            int length = readVarInt(rowTests);
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                int bits = rowTests.get() & 0xFF;
+                while (bits != 0) {
+                    tests[count++] = i * Byte.SIZE + Integer.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+            }
+        } else {
+            int idx = 0;
+            for (int i = 0; i < rowTestsCount; i++) {
+                idx += readVarInt(rowTests);
+                tests[i] = idx;
+            }
+        }
+    }
+
+    /**
+     * Decode the URL of the class in the current row.
+     *
+     * @return The URL of the class in the current row
+     */
+    public String getRowUrl() {
+        return readString(rowUrlPosition);
+    }
+
+    public long getRowChecksum() {
+        return buffer.getLong(checksumsOffset + row * Long.BYTES);
+    }
+
+    public int getRowTestsCount() {
+        return rowTestsCount;
+    }
+
+    /**
+     * The indices of the tests of the current row, only the first getRowTestsCount() are valid. The array is
+     * reused by the next call to nextRow().
+     */
+    public int[] getRowTests() {
+        return tests;
+    }
+
+    private String readString(int position) {
+        int length = 0;
+        int shift = 0;
+        byte current = buffer.get(position++);
+        while ((current & 0x80) != 0) {
+            length |= (current & 0x7F) << shift;
+            shift += 7;
+            current = buffer.get(position++);
+        }
+        length |= current << shift;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(position + i);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    static int readVarInt(ByteBuffer from) {
+        int value = 0;
+        int shift = 0;
+        byte current = from.get();
+        while ((current & 0x80) != 0) {
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+            current = from.get();
+        }
+        return value | (current << shift);
+    }
+
+    private static void writeTests(ByteArrayOutputStream out, BitSet testsIdx) throws IOException {
+        int count = testsIdx.cardinality();
+        int arraySize = 0;
+        int previous = 0;
+        for (int i = testsIdx.nextSetBit(0); i >= 0; i = testsIdx.nextSetBit(i + 1)) {
+            arraySize += varIntSize(i - previous);
+            previous = i;
+        }
+        byte[] bitmap = testsIdx.toByteArray();
+        if (varIntSize(bitmap.length) + bitmap.length < arraySize) {
+            writeVarInt(out, count << 1 | BITMAP_CONTAINER);
+            writeVarInt(out, bitmap.length);
+            out.write(bitmap);
+        } else {
+            writeVarInt(out, count << 1 | ARRAY_CONTAINER);
+            previous = 0;
+            for (int i = testsIdx.nextSetBit(0); i >= 0; i = testsIdx.nextSetBit(i + 1)) {
+                writeVarInt(out, i - previous);
+                previous = i;
+            }
+        }
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void writeString(OutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
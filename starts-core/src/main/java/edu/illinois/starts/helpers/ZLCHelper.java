@@ -11,19 +11,23 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 
 import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.data.TransitiveClosure;
 import edu.illinois.starts.data.ZLCData;
 import edu.illinois.starts.data.ZLCFileContent;
 import edu.illinois.starts.data.ZLCFormat;
+import edu.illinois.starts.util.CheckSumCache;
 import edu.illinois.starts.util.ChecksumUtil;
+import edu.illinois.starts.util.ClassPathIndex;
 import edu.illinois.starts.util.Logger;
 import edu.illinois.starts.util.Pair;
 import org.ekstazi.util.Types;
@@ -42,53 +46,53 @@ public class ZLCHelper implements StartsConstants {
         zlcDataMap = new HashMap<>();
     }
 
-// TODO: Uncomment and fix this method. The problem is that it does not track newly added tests correctly
-//    public static void updateZLCFile(Map<String, Set<String>> testDeps, ClassLoader loader,
-//                                     String artifactsDir, Set<String> changed) {
-//        long start = System.currentTimeMillis();
-//        File file = new File(artifactsDir, zlcFile);
-//        if (! file.exists()) {
-//            Set<ZLCData> zlc = createZLCData(testDeps, loader);
-//            Writer.writeToFile(zlc, zlcFile, artifactsDir);
-//        } else {
-//            Set<ZLCData> zlcData = new HashSet<>();
-//            if (zlcDataMap != null) {
-//                for (ZLCData data : zlcDataMap.values()) {
-//                    String extForm = data.getUrl().toExternalForm();
-//                    if (changed.contains(extForm)) {
-//                         we need to update tests for this zlcData before adding
-//                        String fqn = Writer.toFQN(extForm);
-//                        Set<String> tests = new HashSet<>();
-//                        if (testDeps.keySet().contains(fqn)) {
-//                             a test class changed, it affects on itself
-//                            tests.add(fqn);
-//                        }
-//                        for (String test : testDeps.keySet()) {
-//                            if (testDeps.get(test).contains(fqn)) tests.add(test);
-//                        }
-//                        if (tests.isEmpty()) {
-//                             this dep no longer has ant tests depending on it???
-//                            continue;
-//                        }
-//                        data.setTests(tests);
-//                    }
-//                    zlcData.add(data);
-//                }
-//            }
-//            Writer.writeToFile(zlcData, zlcFile, artifactsDir);
-//        }
-//        long end = System.currentTimeMillis();
-//        System.out.println(TIME_UPDATING_CHECKSUMS + (end - start) + MS);
-//    }
-
+    /**
+     * Write the deps.zlc file for the next run. When the previous deps.zlc file exists and some tests were
+     * not affected, only the rows of changed or newly-tracked classes and the membership of affected tests
+     * are recomputed; everything else is taken from the previous file.
+     *
+     * @param testDeps      The transitive dependencies of every test
+     * @param loader        The loader used to find the URL of every dependency
+     * @param artifactsDir  The directory in which we store STARTS artifacts
+     * @param unreached     The dependencies that are not reached by any test
+     * @param useThirdParty Track classes in third-party jars
+     * @param format        The format in which to write the deps.zlc file
+     * @param nonAffected   The tests that were not affected by the changes since the previous deps.zlc file
+     */
     public static void updateZLCFile(Map<String, Set<String>> testDeps, ClassLoader loader,
                                      String artifactsDir, Set<String> unreached, boolean useThirdParty,
-                                     ZLCFormat format) {
-        // TODO: Optimize this by only recomputing the checksum+tests for changed classes and newly added tests
+                                     ZLCFormat format, Set<String> nonAffected) {
+        updateZLCFile(testDeps, ClassPathIndex.create(loader), artifactsDir, unreached, useThirdParty, format,
+                nonAffected);
+    }
+
+    /**
+     * Same as updateZLCFile(testDeps, loader, ...), with an index of the classpath of the loader that was
+     * already built in this run.
+     *
+     * @param index The index used to find the URL of every dependency
+     */
+    public static void updateZLCFile(Map<String, Set<String>> testDeps, ClassPathIndex index,
+                                     String artifactsDir, Set<String> unreached, boolean useThirdParty,
+                                     ZLCFormat format, Set<String> nonAffected) {
         long start = System.currentTimeMillis();
         LOGGER.log(Level.FINE, "ZLC format: " + format.toString());
-        ZLCFileContent zlc = createZLCData(testDeps, loader, useThirdParty, format);
+        Map<String, Pair<String, BitSet>> oldData = null;
+        List<String> oldTests = new ArrayList<>();
+        File file = new File(artifactsDir, zlcFile);
+        if (!nonAffected.isEmpty() && file.exists()) {
+            try {
+                oldData = readZLCData(file, new HashSet<>(), oldTests);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Regenerating unreadable " + zlcFile + " file", ex);
+            }
+        }
+        // the checksums in deps.zlc are always computed with cleanBytes
+        CheckSumCache cache = CheckSumCache.load(artifactsDir, true);
+        ZLCFileContent zlc = oldData == null ? createZLCData(testDeps, index, useThirdParty, format, cache)
+                : updateZLCData(testDeps, index, useThirdParty, format, oldTests, oldData, nonAffected, cache);
         Writer.writeToFile(zlc, zlcFile, artifactsDir);
+        cache.save(artifactsDir);
         long end = System.currentTimeMillis();
         LOGGER.log(Level.FINE, "[PROFILE] updateForNextRun(updateZLCFile): " + Writer.millsToSeconds(end - start));
     }
@@ -98,61 +102,192 @@ public class ZLCHelper implements StartsConstants {
             ClassLoader loader,
             boolean useJars,
             ZLCFormat format
+    ) {
+        return createZLCData(testDeps, ClassPathIndex.create(loader), useJars, format, null);
+    }
+
+    static ZLCFileContent createZLCData(
+            Map<String, Set<String>> testDeps,
+            ClassPathIndex index,
+            boolean useJars,
+            ZLCFormat format,
+            CheckSumCache cache
     ) {
         long start = System.currentTimeMillis();
         List<ZLCData> zlcData = new ArrayList<>();
-        Set<String> deps = new HashSet<>();
-        ChecksumUtil checksumUtil = new ChecksumUtil(true);
-        // merge all the deps for all tests into a single set
-        for (String test : testDeps.keySet()) {
-            deps.addAll(testDeps.get(test));
-        }
+        ChecksumUtil checksumUtil = new ChecksumUtil(true, cache);
         ArrayList<String> testList = new ArrayList<>(testDeps.keySet());  // all tests
+        // the keys are all the deps for all tests
+        Map<String, BitSet> depToTests = invertTestDeps(testList, testDeps);
 
         // for each dep, find it's url, checksum and tests that depend on it
-        for (String dep : deps) {
-            String klas = ChecksumUtil.toClassName(dep);
-            if (Types.isIgnorableInternalName(klas)) {
-                continue;
-            }
-            URL url = loader.getResource(klas);
+        for (Map.Entry<String, BitSet> entry : depToTests.entrySet()) {
+            URL url = getTrackedURL(entry.getKey(), index, useJars);
             if (url == null) {
                 continue;
             }
-            String extForm = url.toExternalForm();
-            if (ChecksumUtil.isWellKnownUrl(extForm) || (!useJars && extForm.startsWith("jar:"))) {
+            String checksum = checksumUtil.computeSingleCheckSum(url);
+            zlcData.add(makeZLCData(url, checksum, format, entry.getValue(), testList));
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINEST, "[TIME]CREATING ZLC FILE: " + (end - start) + MILLISECOND);
+        return new ZLCFileContent(testList, zlcData, format);
+    }
+
+    /**
+     * Compute the deps.zlc content from the content of the previous deps.zlc file. The dependencies of
+     * non-affected tests did not change, so for a class that was already tracked only the affected tests
+     * may be added to or removed from its row, and its checksum only needs to be recomputed if some of its
+     * previous tests were affected. Classes that were not tracked before get a full row.
+     */
+    static ZLCFileContent updateZLCData(
+            Map<String, Set<String>> testDeps,
+            ClassPathIndex index,
+            boolean useJars,
+            ZLCFormat format,
+            List<String> oldTests,
+            Map<String, Pair<String, BitSet>> oldData,
+            Set<String> nonAffected,
+            CheckSumCache cache
+    ) {
+        long start = System.currentTimeMillis();
+        List<ZLCData> zlcData = new ArrayList<>();
+        ChecksumUtil checksumUtil = new ChecksumUtil(true, cache);
+        ArrayList<String> testList = new ArrayList<>(testDeps.keySet());  // all tests
+        Map<String, Integer> testsIdx = new HashMap<>();
+        BitSet affected = new BitSet(testList.size());
+        for (int i = 0; i < testList.size(); i++) {
+            testsIdx.put(testList.get(i), i);
+            if (!nonAffected.contains(testList.get(i))) {
+                affected.set(i);
+            }
+        }
+        // the non-affected tests by their index in the previous file, and the new index of each old test
+        BitSet oldNonAffected = new BitSet(oldTests.size());
+        int[] oldToNew = new int[oldTests.size()];
+        for (int i = 0; i < oldTests.size(); i++) {
+            Integer idx = testsIdx.get(oldTests.get(i));
+            // tests that were deleted do not have a new index
+            oldToNew[i] = idx == null ? -1 : idx;
+            if (nonAffected.contains(oldTests.get(i))) {
+                oldNonAffected.set(i);
+            }
+        }
+        Map<String, BitSet> depToTests = invertTestDeps(testList, testDeps);
+        int reused = 0;
+        for (Map.Entry<String, BitSet> entry : depToTests.entrySet()) {
+            URL url = getTrackedURL(entry.getKey(), index, useJars);
+            if (url == null) {
                 continue;
             }
-            String checksum = checksumUtil.computeSingleCheckSum(url);
-            switch (format) {
-                case PLAIN_TEXT:
-                    Set<String> testsStr = new HashSet<>();
-                    for (String test: testDeps.keySet()) {
-                        if (testDeps.get(test).contains(dep)) {
-                            testsStr.add(test);
-                        }
-                    }
-                    zlcData.add(new ZLCData(url, checksum, format, testsStr, null));
-                    break;
-                case INDEXED:
-                    Set<Integer> testsIdx = new HashSet<>();
-                    for (int i = 0; i < testList.size(); i++) {
-                        if (testDeps.get(testList.get(i)).contains(dep)) {
-                            testsIdx.add(i);
-                        }
+            Pair<String, BitSet> old = oldData.get(url.toExternalForm());
+            String checksum;
+            BitSet tests;
+            if (old == null) {
+                checksum = checksumUtil.computeSingleCheckSum(url);
+                tests = entry.getValue();
+            } else {
+                BitSet oldAffected = (BitSet) old.getValue().clone();
+                oldAffected.andNot(oldNonAffected);
+                // a changed class affects all the tests that depended on it
+                if (!old.getValue().isEmpty() && oldAffected.isEmpty()) {
+                    checksum = old.getKey();
+                    reused++;
+                } else {
+                    checksum = checksumUtil.computeSingleCheckSum(url);
+                }
+                tests = (BitSet) entry.getValue().clone();
+                tests.and(affected);
+                BitSet oldTestsIdx = old.getValue();
+                for (int i = oldTestsIdx.nextSetBit(0); i >= 0; i = oldTestsIdx.nextSetBit(i + 1)) {
+                    if (oldNonAffected.get(i) && oldToNew[i] >= 0) {
+                        tests.set(oldToNew[i]);
                     }
-                    zlcData.add(new ZLCData(url, checksum, format, null, testsIdx));
-                    break;
-                default:
-                    throw new RuntimeException("Unexpected ZLCFormat");
+                }
             }
+            zlcData.add(makeZLCData(url, checksum, format, tests, testList));
         }
         long end = System.currentTimeMillis();
-        LOGGER.log(Level.FINEST, "[TIME]CREATING ZLC FILE: " + (end - start) + MILLISECOND);
+        LOGGER.log(Level.FINE, "INCREMENTAL ZLC: reused " + reused + " of " + zlcData.size() + " checksums");
+        LOGGER.log(Level.FINEST, "[TIME]UPDATING ZLC FILE: " + (end - start) + MILLISECOND);
         return new ZLCFileContent(testList, zlcData, format);
     }
 
+    /**
+     * Invert the transitive closure of the tests in a single pass over it.
+     *
+     * @param testList The tests, which are referred to by their index in this list
+     * @param testDeps The transitive dependencies of every test
+     * @return         A map from each dependency to the indices of the tests that depend on it
+     */
+    static Map<String, BitSet> invertTestDeps(List<String> testList, Map<String, Set<String>> testDeps) {
+        if (testDeps instanceof TransitiveClosure) {
+            return ((TransitiveClosure) testDeps).invert(testList);
+        }
+        Map<String, BitSet> depToTests = new HashMap<>();
+        for (int i = 0; i < testList.size(); i++) {
+            for (String dep : testDeps.get(testList.get(i))) {
+                depToTests.computeIfAbsent(dep, k -> new BitSet()).set(i);
+            }
+        }
+        return depToTests;
+    }
+
+    private static ZLCData makeZLCData(URL url, String checksum, ZLCFormat format, BitSet tests,
+                                       List<String> testList) {
+        switch (format) {
+            case PLAIN_TEXT:
+                return new ZLCData(url, checksum, format, toTestNames(tests, testList), null);
+            case INDEXED:
+            case BINARY:
+                return new ZLCData(url, checksum, format, null, tests);
+            default:
+                throw new RuntimeException("Unexpected ZLCFormat");
+        }
+    }
+
+    static URL getTrackedURL(String dep, ClassPathIndex index, boolean useJars) {
+        String klas = ChecksumUtil.toClassName(dep);
+        if (Types.isIgnorableInternalName(klas)) {
+            return null;
+        }
+        URL url = index.getResource(klas);
+        if (url == null) {
+            return null;
+        }
+        String extForm = url.toExternalForm();
+        if (ChecksumUtil.isWellKnownUrl(extForm) || (!useJars && extForm.startsWith("jar:"))) {
+            return null;
+        }
+        return url;
+    }
+
     public static Pair<Set<String>, Set<String>> getChangedData(String artifactsDir, boolean cleanBytes) {
+        return getChangedData(artifactsDir, cleanBytes, 1);
+    }
+
+    /**
+     * Find the tests that are not affected by the changes since deps.zlc was written, and the changed classes.
+     *
+     * @param artifactsDir The directory in which we store STARTS artifacts
+     * @param cleanBytes   Strip debug info from the class files before hashing them
+     * @param threads      The number of threads on which to hash the classes; the result does not depend on it
+     * @return             The non-affected tests and the URLs of the changed classes, or null on the first run
+     */
+    public static Pair<Set<String>, Set<String>> getChangedData(String artifactsDir, boolean cleanBytes,
+                                                                int threads) {
+        return getChangedData(artifactsDir, cleanBytes, threads, null);
+    }
+
+    /**
+     * Same as getChangedData(artifactsDir, cleanBytes, threads), but the classes in jars are hashed where the
+     * given relocator finds them on the current classpath, so that upgraded or removed jars are only changes
+     * to the classes that differ.
+     *
+     * @param relocator The relocator of tracked jar URLs, or null to hash the tracked URLs
+     */
+    public static Pair<Set<String>, Set<String>> getChangedData(String artifactsDir, boolean cleanBytes,
+                                                                int threads, JarRelocator relocator) {
         long start = System.currentTimeMillis();
         File zlc = new File(artifactsDir, zlcFile);
         if (!zlc.exists()) {
@@ -161,85 +296,214 @@ public class ZLCHelper implements StartsConstants {
         }
         Set<String> changedClasses = new HashSet<>();
         Set<String> nonAffected = new HashSet<>();
-        Set<String> affected = new HashSet<>();
         Set<String> starTests = new HashSet<>();
-        ChecksumUtil checksumUtil = new ChecksumUtil(cleanBytes);
+        CheckSumCache cache = CheckSumCache.load(artifactsDir, cleanBytes);
         try {
-            List<String> zlcLines = Files.readAllLines(zlc.toPath(), Charset.defaultCharset());
-            String firstLine = zlcLines.get(0);
-            String space = WHITE_SPACE;
-
-            // check whether the first line is for *
-            if (firstLine.startsWith(STAR_FILE)) {
-                String[] parts = firstLine.split(space);
-                starTests = fromCSV(parts[2]);
-                zlcLines.remove(0);
-            }
-
-            ZLCFormat format = ZLCFormat.PLAIN_TEXT;  // default to plain text
-            if (zlcLines.get(0).equals(ZLCFormat.PLAIN_TEXT.toString())) {
-                format = ZLCFormat.PLAIN_TEXT;
-                zlcLines.remove(0);
-            } else if (zlcLines.get(0).equals(ZLCFormat.INDEXED.toString())) {
-                format = ZLCFormat.INDEXED;
-                zlcLines.remove(0);
-            }
-
-            int testsCount = -1;  // on PLAIN_TEXT, testsCount+1 will starts from 0
-            ArrayList<String> testsList = null;
-            if (format == ZLCFormat.INDEXED) {
-                try {
-                    testsCount = Integer.parseInt(zlcLines.get(0));
-                } catch (NumberFormatException nfe) {
-                    nfe.printStackTrace();
-                }
-                testsList = new ArrayList<>(zlcLines.subList(1, testsCount + 1));
+            if (ZLCBinaryFile.isBinary(zlc)) {
+                Pair<Set<String>, Set<String>> changedData = getChangedBinaryData(zlc, cleanBytes, threads, cache,
+                        relocator, start);
+                cache.save(artifactsDir);
+                return changedData;
             }
-
-            for (int i = testsCount + 1; i < zlcLines.size(); i++) {
-                String line = zlcLines.get(i);
-                String[] parts = line.split(space);
-                String stringURL = parts[0];
-                String oldCheckSum = parts[1];
-                Set<String> tests;
-                if (format == ZLCFormat.INDEXED) {
-                    Set<Integer> testsIdx = parts.length == 3 ? fromCSVToInt(parts[2]) : new HashSet<>();
-                    tests = testsIdx.stream().map(testsList::get).collect(Collectors.toSet());
-                } else {
-                    tests = parts.length == 3 ? fromCSV(parts[2]) : new HashSet<>();
-                }
-                nonAffected.addAll(tests);
-                URL url = new URL(stringURL);
-                String newCheckSum = checksumUtil.computeSingleCheckSum(url);
+            // tests are only tracked by their index until the end
+            List<String> testList = new ArrayList<>();
+            Map<String, Pair<String, BitSet>> zlcData = readZLCData(zlc, starTests, testList);
+            List<String> urls = new ArrayList<>(zlcData.keySet());
+            String[] newCheckSums = relocator == null ? ChecksumUtil.computeCheckSums(urls, cleanBytes, threads, cache)
+                    : relocator.computeCheckSums(urls, cleanBytes, threads, cache);
+            BitSet nonAffectedIdx = new BitSet(testList.size());
+            BitSet affectedIdx = new BitSet(testList.size());
+            int row = 0;
+            for (Map.Entry<String, Pair<String, BitSet>> entry : zlcData.entrySet()) {
+                String stringURL = entry.getKey();
+                String oldCheckSum = entry.getValue().getKey();
+                BitSet tests = entry.getValue().getValue();
+                nonAffectedIdx.or(tests);
+                String newCheckSum = newCheckSums[row++];
                 if (!newCheckSum.equals(oldCheckSum)) {
-                    affected.addAll(tests);
+                    affectedIdx.or(tests);
                     changedClasses.add(stringURL);
                 }
                 if (newCheckSum.equals("-1")) {
                     // a class was deleted or auto-generated, no need to track it in zlc
-                    LOGGER.log(Level.FINEST, "Ignoring: " + url);
+                    LOGGER.log(Level.FINEST, "Ignoring: " + stringURL);
                     continue;
                 }
             }
+            nonAffectedIdx.andNot(affectedIdx);
+            nonAffected = toTestNames(nonAffectedIdx, testList);
         } catch (IOException ioe) {
             ioe.printStackTrace();
         }
         if (!changedClasses.isEmpty()) {
             // there was some change so we need to add all tests that reach star, if any
-            affected.addAll(starTests);
+            nonAffected.removeAll(starTests);
         }
-        nonAffected.removeAll(affected);
+        cache.save(artifactsDir);
+        LOGGER.log(Level.FINE, "CHECKSUM CACHE HITS: " + cache.getHits());
         long end = System.currentTimeMillis();
         LOGGER.log(Level.FINEST, TIME_COMPUTING_NON_AFFECTED + (end - start) + MILLISECOND);
         return new Pair<>(nonAffected, changedClasses);
     }
 
+    private static Pair<Set<String>, Set<String>> getChangedBinaryData(File zlc, boolean cleanBytes, int threads,
+                                                                       CheckSumCache cache, JarRelocator relocator,
+                                                                       long start)
+            throws IOException {
+        ZLCBinaryFile binaryFile = new ZLCBinaryFile(zlc);
+        String[] newCheckSums = null;
+        if (threads > 1 || relocator != null) {
+            // the URLs have to be decoded up front to be hashed concurrently or relocated
+            List<String> urls = new ArrayList<>(binaryFile.getRowsCount());
+            while (binaryFile.hasNextRow()) {
+                binaryFile.nextRow();
+                urls.add(binaryFile.getRowUrl());
+            }
+            newCheckSums = relocator == null ? ChecksumUtil.computeCheckSums(urls, cleanBytes, threads, cache)
+                    : relocator.computeCheckSums(urls, cleanBytes, threads, cache);
+            binaryFile.reset();
+        }
+        ChecksumUtil checksumUtil = new ChecksumUtil(cleanBytes, cache);
+        Set<String> changedClasses = new HashSet<>();
+        BitSet nonAffectedIdx = new BitSet(binaryFile.getTestsCount());
+        BitSet affectedIdx = new BitSet(binaryFile.getTestsCount());
+        int row = 0;
+        while (binaryFile.hasNextRow()) {
+            binaryFile.nextRow();
+            int[] tests = binaryFile.getRowTests();
+            for (int i = 0; i < binaryFile.getRowTestsCount(); i++) {
+                nonAffectedIdx.set(tests[i]);
+            }
+            String newCheckSum = newCheckSums == null ? checksumUtil.computeSingleCheckSum(binaryFile.getRowUrl())
+                    : newCheckSums[row];
+            if (Long.parseLong(newCheckSum) != binaryFile.getRowChecksum()) {
+                for (int i = 0; i < binaryFile.getRowTestsCount(); i++) {
+                    affectedIdx.set(tests[i]);
+                }
+                changedClasses.add(binaryFile.getRowUrl());
+            }
+            row++;
+        }
+        nonAffectedIdx.andNot(affectedIdx);
+        Set<String> nonAffected = new HashSet<>();
+        for (int i = nonAffectedIdx.nextSetBit(0); i >= 0; i = nonAffectedIdx.nextSetBit(i + 1)) {
+            nonAffected.add(binaryFile.getTest(i));
+        }
+        LOGGER.log(Level.FINE, "CHECKSUM CACHE HITS: " + cache.getHits());
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINEST, TIME_COMPUTING_NON_AFFECTED + (end - start) + MILLISECOND);
+        return new Pair<>(nonAffected, changedClasses);
+    }
+
+    /**
+     * Read the rows of a deps.zlc file, in any format. Tests are referred to by their index in testList;
+     * in the PLAIN_TEXT format the indices are assigned in the order in which tests are first seen.
+     *
+     * @param zlc       The deps.zlc file
+     * @param starTests Filled with the tests that reach "*", if the file tracks them
+     * @param testList  Filled with the tests of the file
+     * @return          A map from each tracked URL to its checksum and the tests that depend on it
+     * @throws IOException If the file cannot be read
+     */
+    static Map<String, Pair<String, BitSet>> readZLCData(File zlc, Set<String> starTests, List<String> testList)
+            throws IOException {
+        Map<String, Pair<String, BitSet>> zlcData = new LinkedHashMap<>();
+        if (ZLCBinaryFile.isBinary(zlc)) {
+            ZLCBinaryFile binaryFile = new ZLCBinaryFile(zlc);
+            for (int i = 0; i < binaryFile.getTestsCount(); i++) {
+                testList.add(binaryFile.getTest(i));
+            }
+            while (binaryFile.hasNextRow()) {
+                binaryFile.nextRow();
+                String stringURL = binaryFile.getRowUrl();
+                BitSet tests = new BitSet(binaryFile.getTestsCount());
+                for (int i = 0; i < binaryFile.getRowTestsCount(); i++) {
+                    tests.set(binaryFile.getRowTests()[i]);
+                }
+                zlcData.put(stringURL, new Pair<>(String.valueOf(binaryFile.getRowChecksum()), tests));
+            }
+            return zlcData;
+        }
+        List<String> zlcLines = Files.readAllLines(zlc.toPath(), Charset.defaultCharset());
+        String firstLine = zlcLines.get(0);
+        String space = WHITE_SPACE;
+
+        // check whether the first line is for *
+        if (firstLine.startsWith(STAR_FILE)) {
+            String[] parts = firstLine.split(space);
+            starTests.addAll(fromCSV(parts[2]));
+            zlcLines.remove(0);
+        }
+
+        ZLCFormat format = ZLCFormat.PLAIN_TEXT;  // default to plain text
+        if (zlcLines.get(0).equals(ZLCFormat.PLAIN_TEXT.toString())) {
+            format = ZLCFormat.PLAIN_TEXT;
+            zlcLines.remove(0);
+        } else if (zlcLines.get(0).equals(ZLCFormat.INDEXED.toString())) {
+            format = ZLCFormat.INDEXED;
+            zlcLines.remove(0);
+        }
+
+        int testsCount = -1;  // on PLAIN_TEXT, testsCount+1 will starts from 0
+        Map<String, Integer> testsIdx = new HashMap<>();
+        if (format == ZLCFormat.INDEXED) {
+            try {
+                testsCount = Integer.parseInt(zlcLines.get(0));
+            } catch (NumberFormatException nfe) {
+                nfe.printStackTrace();
+            }
+            testList.addAll(zlcLines.subList(1, testsCount + 1));
+        }
+
+        for (int i = testsCount + 1; i < zlcLines.size(); i++) {
+            String line = zlcLines.get(i);
+            String[] parts = line.split(space);
+            BitSet tests = new BitSet();
+            if (parts.length == 3 && format == ZLCFormat.INDEXED) {
+                tests = fromCSVToBitSet(parts[2]);
+            } else if (parts.length == 3) {
+                for (String test : parts[2].split(COMMA)) {
+                    Integer idx = testsIdx.get(test);
+                    if (idx == null) {
+                        idx = testList.size();
+                        testsIdx.put(test, idx);
+                        testList.add(test);
+                    }
+                    tests.set(idx);
+                }
+            }
+            zlcData.put(parts[0], new Pair<>(parts[1], tests));
+        }
+        return zlcData;
+    }
+
+    static Set<String> toTestNames(BitSet tests, List<String> testList) {
+        Set<String> names = new HashSet<>();
+        for (int i = tests.nextSetBit(0); i >= 0; i = tests.nextSetBit(i + 1)) {
+            names.add(testList.get(i));
+        }
+        return names;
+    }
+
     private static Set<String> fromCSV(String tests) {
         return new HashSet<>(Arrays.asList(tests.split(COMMA)));
     }
 
-    private static Set<Integer> fromCSVToInt(String tests) {
-        return Arrays.stream(tests.split(COMMA)).map(Integer::parseInt).collect(Collectors.toSet());
+    private static BitSet fromCSVToBitSet(String tests) {
+        BitSet bits = new BitSet();
+        char delimiter = COMMA.charAt(0);
+        int idx = 0;
+        for (int i = 0; i < tests.length(); i++) {
+            char ch = tests.charAt(i);
+            if (ch == delimiter) {
+                bits.set(idx);
+                idx = 0;
+            } else {
+                idx = idx * 10 + (ch - '0');
+            }
+        }
+        bits.set(idx);
+        return bits;
     }
 
     public static Set<String> getExistingClasses(String artifactsDir) {
@@ -251,10 +515,18 @@ public class ZLCHelper implements StartsConstants {
             return existingClasses;
         }
         try {
-            List<String> zlcLines = Files.readAllLines(zlc.toPath(), Charset.defaultCharset());
-            for (String line : zlcLines) {
-                if (line.startsWith("file")) {
-                    existingClasses.add(Writer.urlToFQN(line.split(WHITE_SPACE)[0]));
+            if (ZLCBinaryFile.isBinary(zlc)) {
+                ZLCBinaryFile binaryFile = new ZLCBinaryFile(zlc);
+                while (binaryFile.hasNextRow()) {
+                    binaryFile.nextRow();
+                    existingClasses.add(Writer.urlToFQN(binaryFile.getRowUrl()));
+                }
+            } else {
+                List<String> zlcLines = Files.readAllLines(zlc.toPath(), Charset.defaultCharset());
+                for (String line : zlcLines) {
+                    if (line.startsWith("file")) {
+                        existingClasses.add(Writer.urlToFQN(line.split(WHITE_SPACE)[0]));
+                    }
                 }
             }
         } catch (IOException ioe) {
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+import edu.illinois.starts.constants.StartsConstants;
+
+/**
+ * Remembers the size, modification time and file key (the inode, where the file system has one) of every
+ * class file, or jar, that was hashed, together with its checksum. A class whose file metadata did not change
+ * is not read and hashed again. Files that were modified too close to the time at which they were hashed
+ * are always hashed again, because a second write within the resolution of the modification time would not
+ * change their metadata. Only the entries of the files that were looked up since the cache was loaded are saved,
+ * so that classes and jars that are no longer used do not stay in the file forever.
+ *
+ * <p>The checksums of the classes are stored in deps.zlc or deps.graph, which are always computed with
+ * cleanBytes, while getChangedData hashes with the cleanBytes of the user, so both kinds of checksums are
+ * needed in one run. Each kind is kept in its own file, so that neither invalidates the other.
+ */
+public class CheckSumCache implements StartsConstants {
+    public static final String CHECKSUM_CACHE_FILE = "checksum-cache";
+    private static final String RAW_BYTES_SUFFIX = "-raw";
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final String CLEAN_BYTES_HEADER = "cleanBytes:";
+    private static final String NO_FILE_KEY = "-";
+    private static final long RACY_MILLIS = 2000;
+    private static final String JAR_PREFIX = "jar:";
+    private static final String FILE_PREFIX = "file:";
+    private static final String JAR_SEPARATOR = "!/";
+
+    private final boolean cleanBytes;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> used = ConcurrentHashMap.newKeySet();
+    private volatile boolean modified;
+    private final AtomicInteger hits = new AtomicInteger();
+
+    public CheckSumCache(boolean cleanBytes) {
+        this.cleanBytes = cleanBytes;
+    }
+
+    public boolean isCleanBytes() {
+        return cleanBytes;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Load the cache that was saved in the given directory for the given value of cleanBytes.
+     *
+     * @param artifactsDir The directory in which we store STARTS artifacts
+     * @param cleanBytes   Whether the checksums strip debug info from the class files
+     * @return             The cache, which is empty if nothing could be loaded
+     */
+    public static CheckSumCache load(String artifactsDir, boolean cleanBytes) {
+        CheckSumCache cache = new CheckSumCache(cleanBytes);
+        File file = new File(artifactsDir, getFileName(cleanBytes));
+        if (!file.exists()) {
+            return cache;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), Charset.defaultCharset());
+            if (lines.isEmpty() || !lines.get(0).equals(CLEAN_BYTES_HEADER + cleanBytes)) {
+                return cache;
+            }
+            for (int i = 1; i < lines.size(); i++) {
+                String[] parts = lines.get(i).split(WHITE_SPACE);
+                cache.entries.put(parts[0], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3],
+                        Long.parseLong(parts[4]), parts[5]));
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Ignoring corrupt " + file.getName() + " file", ex);
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Get the name of the file that holds the checksums computed with the given value of cleanBytes.
+     */
+    public static String getFileName(boolean cleanBytes) {
+        return cleanBytes ? CHECKSUM_CACHE_FILE : CHECKSUM_CACHE_FILE + RAW_BYTES_SUFFIX;
+    }
+
+    /**
+     * Save the entries that were looked up since the cache was loaded to the given directory, if anything
+     * changed since it was loaded.
+     *
+     * @param artifactsDir The directory in which we store STARTS artifacts
+     */
+    public void save(String artifactsDir) {
+        if (entries.keySet().retainAll(used)) {
+            modified = true;
+        }
+        if (!modified) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(CLEAN_BYTES_HEADER + cleanBytes);
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            lines.add(entry.getKey() + WHITE_SPACE + entry.getValue());
+        }
+        try {
+            Files.write(Paths.get(artifactsDir, getFileName(cleanBytes)), lines, Charset.defaultCharset());
+            modified = false;
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the checksum of a class, computing it only if the metadata of its file changed.
+     *
+     * @param externalForm The URL of the class
+     * @param hasher       Computes the checksum of the class
+     * @return             The checksum of the class
+     */
+    public String getCheckSum(String externalForm, Function<String, String> hasher) {
+        used.add(externalForm);
+        BasicFileAttributes attributes = readAttributes(externalForm);
+        if (attributes == null) {
+            if (entries.remove(externalForm) != null) {
+                modified = true;
+            }
+            return hasher.apply(externalForm);
+        }
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String fileKey = attributes.fileKey() == null ? NO_FILE_KEY
+                : attributes.fileKey().toString().replace(WHITE_SPACE, EMPTY);
+        Entry entry = entries.get(externalForm);
+        if (entry != null && entry.size == size && entry.lastModified == lastModified && entry.fileKey.equals(fileKey)
+                && lastModified < entry.hashedAt - RACY_MILLIS) {
+            hits.incrementAndGet();
+            return entry.checksum;
+        }
+        long hashedAt = System.currentTimeMillis();
+        String checksum = hasher.apply(externalForm);
+        entries.put(externalForm, new Entry(size, lastModified, fileKey, hashedAt, checksum));
+        modified = true;
+        return checksum;
+    }
+
+    private static BasicFileAttributes readAttributes(String externalForm) {
+        try {
+            Path path;
+            if (externalForm.startsWith(JAR_PREFIX + FILE_PREFIX) && externalForm.contains(JAR_SEPARATOR)) {
+                // a class in a jar did not change if the jar did not change
+                path = Paths.get(URI.create(externalForm.substring(JAR_PREFIX.length(),
+                        externalForm.indexOf(JAR_SEPARATOR))));
+            } else if (externalForm.startsWith(FILE_PREFIX)) {
+                path = Paths.get(URI.create(externalForm));
+            } else {
+                return null;
+            }
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+        private final long hashedAt;
+        private final String checksum;
+
+        Entry(long size, long lastModified, String fileKey, long hashedAt, String checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.hashedAt = hashedAt;
+            this.checksum = checksum;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(WHITE_SPACE, String.valueOf(size), String.valueOf(lastModified), fileKey,
+                    String.valueOf(hashedAt), checksum);
+        }
+    }
+}
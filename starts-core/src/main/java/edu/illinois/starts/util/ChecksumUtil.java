@@ -5,16 +5,24 @@
 package edu.illinois.starts.util;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,13 +35,21 @@ import org.ekstazi.util.Types;
 public class ChecksumUtil implements StartsConstants {
     public static final String JAVAHOME = System.getProperty(JAVA_HOME);
     private static final Logger LOGGER = Logger.getLogger(ChecksumUtil.class.getName());
+    // stands for the classes that are not tracked, because ConcurrentHashMap cannot map them to null
+    private static final RegData UNTRACKED = new RegData(EMPTY, EMPTY);
 
     Hasher hasher;
     private Map<URL, String> checkSumMap; // map from URL to checksums, to reduce hashing
+    private CheckSumCache cache; // checksums of files whose metadata did not change, across runs
 
     public ChecksumUtil(boolean cleanBytes) {
+        this(cleanBytes, null);
+    }
+
+    public ChecksumUtil(boolean cleanBytes, CheckSumCache cache) {
         checkSumMap = new HashMap<>();
         hasher = new Hasher(Hasher.Algorithm.CRC32, 1000, cleanBytes);
+        this.cache = cache;
     }
 
     /**
@@ -46,35 +62,109 @@ public class ChecksumUtil implements StartsConstants {
      */
     public static Map<String, Set<RegData>> makeCheckSumMap(ClassLoader loader, Map<String,
             Set<String>> testDeps, Set<String> affected) {
-        Map<String, Set<RegData>> checksums = new HashMap<>();
-        ChecksumUtil checksumUtil = new ChecksumUtil(true);
-        for (String test : affected) {
-            checksums.put(test, new HashSet<RegData>());
-            URL url = loader.getResource(toClassName(test));
-            checksums.get(test).add(checksumUtil.computeChecksumRegData(url));
-            long start = System.currentTimeMillis();
-            for (String dep : testDeps.get(test)) {
-                String className = toClassName(dep);
-                if (!Types.isIgnorableInternalName(className)) {
-                    url = loader.getResource(className);
-                    if (url != null) {
-                        if (!isWellKnownUrl(url.toExternalForm())) {
-                            checksums.get(test).add(checksumUtil.computeChecksumRegData(url));
-                        }
-                    } else {
-                        // Known benign cases where this can happen: (i) dep is from a shaded jar which is itself on
-                        // the classpath; (ii) dep is from an optional jar dependency of a direct jar dependency (e.g.,
-                        // users of joda-time-*.jar do not necessarily depend on classes from joda-convert-8.jar
-                        LOGGER.log(Level.FINEST, "@@LoadedNullURLForDep: " + dep);
-                    }
+        return makeCheckSumMap(loader, testDeps, affected, 1);
+    }
+
+    /**
+     * Same as makeCheckSumMap(loader, testDeps, affected), but splits the affected tests over the given number
+     * of threads. Every class is resolved and hashed once, however many tests depend on it, and the sets of
+     * all tests share the same RegData for it.
+     */
+    public static Map<String, Set<RegData>> makeCheckSumMap(ClassLoader loader, Map<String,
+            Set<String>> testDeps, Set<String> affected, int threads) {
+        return makeCheckSumMap(ClassPathIndex.create(loader), testDeps, affected, threads);
+    }
+
+    /**
+     * Same as makeCheckSumMap(loader, testDeps, affected, threads), with an index of the classpath of the
+     * loader that was already built in this run.
+     */
+    public static Map<String, Set<RegData>> makeCheckSumMap(ClassPathIndex index, Map<String,
+            Set<String>> testDeps, Set<String> affected, int threads) {
+        Map<String, RegData> resolved = new ConcurrentHashMap<>();
+        Map<String, Set<RegData>> checksums = new ConcurrentHashMap<>();
+        if (threads <= 1 || affected.size() <= 1) {
+            ChecksumUtil checksumUtil = new ChecksumUtil(true);
+            for (String test : affected) {
+                checksums.put(test, makeCheckSums(test, testDeps.get(test), index, checksumUtil, resolved));
+            }
+            return checksums;
+        }
+        ThreadLocal<ChecksumUtil> checksumUtils = ThreadLocal.withInitial(() -> new ChecksumUtil(true));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (String test : affected) {
+                tasks.add(executor.submit(() -> {
+                    checksums.put(test, makeCheckSums(test, testDeps.get(test), index, checksumUtils.get(),
+                            resolved));
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        } catch (ExecutionException ee) {
+            throw new RuntimeException(ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return checksums;
+    }
+
+    private static Set<RegData> makeCheckSums(String test, Set<String> deps, ClassPathIndex index,
+                                              ChecksumUtil checksumUtil, Map<String, RegData> resolved) {
+        long start = System.currentTimeMillis();
+        Set<RegData> checksums = new HashSet<>();
+        RegData testData = resolve(toClassName(test), index, checksumUtil, resolved);
+        if (testData != UNTRACKED) {
+            checksums.add(testData);
+        }
+        for (String dep : deps) {
+            String className = toClassName(dep);
+            if (!Types.isIgnorableInternalName(className)) {
+                RegData regData = resolve(className, index, checksumUtil, resolved);
+                if (regData != UNTRACKED) {
+                    checksums.add(regData);
                 }
             }
-            long end = System.currentTimeMillis();
-            LOGGER.log(Level.FINEST, "LOADED RESOURCES: " + (end - start) + MILLISECOND);
         }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINEST, "LOADED RESOURCES: " + (end - start) + MILLISECOND);
         return checksums;
     }
 
+    /**
+     * Get the RegData of a class from the classes that were already resolved, or resolve and hash the class.
+     *
+     * @return The RegData, or UNTRACKED if the class is not found or is well-known
+     */
+    private static RegData resolve(String className, ClassPathIndex index, ChecksumUtil checksumUtil,
+                                   Map<String, RegData> resolved) {
+        RegData regData = resolved.get(className);
+        if (regData != null) {
+            return regData;
+        }
+        // hashing outside of the map, so that other threads are not blocked; a class that two threads resolve
+        // at the same time is hashed twice, but only the first RegData is shared
+        String location = index.getLocation(className);
+        if (location == null) {
+            // Known benign cases where this can happen: (i) dep is from a shaded jar which is itself on
+            // the classpath; (ii) dep is from an optional jar dependency of a direct jar dependency (e.g.,
+            // users of joda-time-*.jar do not necessarily depend on classes from joda-convert-8.jar
+            LOGGER.log(Level.FINEST, "@@LoadedNullURLForDep: " + className);
+            regData = UNTRACKED;
+        } else if (isWellKnownUrl(location)) {
+            regData = UNTRACKED;
+        } else {
+            regData = new RegData(location, checksumUtil.computeSingleCheckSum(location));
+        }
+        RegData existing = resolved.putIfAbsent(className, regData);
+        return existing == null ? regData : existing;
+    }
+
     /**
      * Check for so-called "well-known" classes that we don't track for RTS purposes.
      * Copied from Ekstazi.
@@ -116,6 +206,21 @@ public class ChecksumUtil implements StartsConstants {
         }
     }
 
+    /**
+     * Read the dependencies of a test from its .clz file.
+     *
+     * @return The dependencies, or null if the file cannot be read
+     */
+    public static Set<RegData> readChecksumFile(File file) {
+        StartsStorer storer = new StartsStorer(true);
+        try (FileInputStream fis = new FileInputStream(file)) {
+            return storer.load(fis);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            return null;
+        }
+    }
+
     public RegData computeChecksumRegData(URL url) {
         String checksum = getCheckSum(url);
         return new RegData(url.toExternalForm(), checksum);
@@ -130,7 +235,71 @@ public class ChecksumUtil implements StartsConstants {
     }
 
     public String computeSingleCheckSum(URL url) {
-        return hasher.hashURL(url.toExternalForm());
+        return computeSingleCheckSum(url.toExternalForm());
+    }
+
+    public String computeSingleCheckSum(String externalForm) {
+        if (cache != null) {
+            return cache.getCheckSum(externalForm, hasher::hashURL);
+        }
+        return hasher.hashURL(externalForm);
+    }
+
+    /**
+     * Compute the checksums of several classes, using a fixed pool of threads when threads > 1. Each
+     * thread has its own Hasher, because Hasher serializes all calls on the same instance.
+     *
+     * @param externalForms The URLs of the classes
+     * @param cleanBytes    Strip debug info from the class files before hashing them
+     * @param threads       The number of threads to use
+     * @return              The checksums, in the same order as externalForms
+     */
+    public static String[] computeCheckSums(List<String> externalForms, boolean cleanBytes, int threads) {
+        return computeCheckSums(externalForms, cleanBytes, threads, null);
+    }
+
+    /**
+     * Same as computeCheckSums(externalForms, cleanBytes, threads), but skips hashing the classes whose file
+     * metadata did not change according to the given cache, which may be null.
+     */
+    public static String[] computeCheckSums(List<String> externalForms, boolean cleanBytes, int threads,
+                                            CheckSumCache cache) {
+        String[] checksums = new String[externalForms.size()];
+        if (threads <= 1 || externalForms.size() <= 1) {
+            ChecksumUtil checksumUtil = new ChecksumUtil(cleanBytes, cache);
+            for (int i = 0; i < checksums.length; i++) {
+                checksums[i] = checksumUtil.computeSingleCheckSum(externalForms.get(i));
+            }
+            return checksums;
+        }
+        ThreadLocal<ChecksumUtil> checksumUtils = ThreadLocal.withInitial(() -> new ChecksumUtil(cleanBytes, cache));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // a few batches per thread, so that one slow batch does not hold back the others
+            int batchSize = Math.max(1, checksums.length / (threads * 4));
+            List<Future<?>> batches = new ArrayList<>();
+            for (int from = 0; from < checksums.length; from += batchSize) {
+                int start = from;
+                int end = Math.min(checksums.length, from + batchSize);
+                batches.add(executor.submit(() -> {
+                    ChecksumUtil checksumUtil = checksumUtils.get();
+                    for (int i = start; i < end; i++) {
+                        checksums[i] = checksumUtil.computeSingleCheckSum(externalForms.get(i));
+                    }
+                }));
+            }
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        } catch (ExecutionException ee) {
+            throw new RuntimeException(ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return checksums;
     }
 
     static class StartsStorer extends TxtStorer {
@@ -138,6 +307,10 @@ public class ChecksumUtil implements StartsConstants {
             super(checkMagicSequence);
         }
 
+        public Set<RegData> load(FileInputStream fis) {
+            return super.extendedLoad(fis);
+        }
+
         public void save(FileOutputStream fos, Set<RegData> data) {
             SortedSet<RegData> sortedData = new TreeSet<>(new RegData.RegComparator());
             sortedData.addAll(data);
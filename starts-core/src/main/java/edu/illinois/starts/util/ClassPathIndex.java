@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import edu.illinois.starts.constants.StartsConstants;
+
+/**
+ * Finds the location of the class files on the classpath of a URLClassLoader, without asking the loader.
+ * URLClassLoader.getResource probes every entry of the classpath in turn until one has the class, so looking
+ * up many classes on a classpath with hundreds of jars is slow. This index reads every directory tree and
+ * the central directory of every jar once, in classpath order, and then maps each class file to the location
+ * at which the loader would find it, with the same URL external form, such as "file:/dir/a/B.class" or
+ * "jar:file:/lib.jar!/a/B.class". The parent of the loader, which holds the classes of the JDK, is still
+ * asked first, as the loader does, and whatever the index cannot answer, such as the classes of a loader
+ * that is not a URLClassLoader, is left to the loader itself. So are the classes of multi-release jars, in
+ * which the loader picks the entry under META-INF/versions/ that matches the version of Java it runs on.
+ */
+public class ClassPathIndex implements StartsConstants {
+    private static final Logger LOGGER = Logger.getGlobal();
+    private static final String FILE_PROTOCOL = "file";
+    private static final String JAR_PREFIX = "jar:";
+    private static final String JAR_SEPARATOR = "!/";
+    // a loader without classes of its own, which finds exactly what the bootstrap loader has
+    private static final ClassLoader BOOTSTRAP = new URLClassLoader(new URL[0], null);
+    private static final String MULTI_RELEASE = "Multi-Release";
+    private static final String VERSIONS = "META-INF/versions/";
+    // the base of the class files that only the loader can locate
+    private static final String ASK_LOADER = "";
+
+    private final ClassLoader loader;
+    // the base of the location of every class file, one String shared by all class files of an entry
+    private final Map<String, String> locations = new HashMap<>();
+    private boolean complete;
+
+    private ClassPathIndex(ClassLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Index the classpath of a loader.
+     *
+     * @param loader The loader; only a URLClassLoader has a classpath that can be indexed
+     * @return       The index
+     */
+    public static ClassPathIndex create(ClassLoader loader) {
+        long start = System.currentTimeMillis();
+        ClassPathIndex index = new ClassPathIndex(loader);
+        if (loader instanceof URLClassLoader) {
+            Deque<URL> urls = new ArrayDeque<>();
+            for (URL url : ((URLClassLoader) loader).getURLs()) {
+                urls.addLast(url);
+            }
+            Set<String> seen = new HashSet<>();
+            index.complete = true;
+            while (index.complete && !urls.isEmpty()) {
+                URL url = urls.removeFirst();
+                if (seen.add(url.toExternalForm())) {
+                    index.complete = index.add(url, urls);
+                }
+            }
+            if (!index.complete) {
+                // the loader may find classes where the index cannot, so the index could give wrong answers
+                index.locations.clear();
+            }
+        }
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.FINE, "[TIME]INDEXING CLASSPATH: " + (end - start) + MILLISECOND + " ("
+                + index.locations.size() + " classes)");
+        return index;
+    }
+
+    /**
+     * Get the location of a class file, like the external form of loader.getResource(className).
+     *
+     * @param className The name of the class file, such as "a/b/C.class"
+     * @return          The location, or null if the loader does not find the class file
+     */
+    public String getLocation(String className) {
+        if (!complete || !isPlain(className)) {
+            return toLocation(loader.getResource(className));
+        }
+        // like the loader, ask its parent first, which is the bootstrap loader if it has none
+        ClassLoader parent = loader.getParent() == null ? BOOTSTRAP : loader.getParent();
+        URL url = parent.getResource(className);
+        if (url != null) {
+            return url.toExternalForm();
+        }
+        return getIndexedLocation(className);
+    }
+
+    private String getIndexedLocation(String className) {
+        String base = locations.get(className);
+        if (base == null) {
+            return null;
+        }
+        return base.equals(ASK_LOADER) ? toLocation(loader.getResource(className)) : base + className;
+    }
+
+    /**
+     * Same as getLocation(className), as a URL.
+     */
+    public URL getResource(String className) {
+        String location = getLocation(className);
+        try {
+            return location == null ? null : new URL(location);
+        } catch (MalformedURLException murle) {
+            return loader.getResource(className);
+        }
+    }
+
+    private static String toLocation(URL url) {
+        return url == null ? null : url.toExternalForm();
+    }
+
+    /**
+     * Add the class files of a classpath entry, unless an earlier entry already has them, and queue the jars
+     * on the Class-Path of its manifest, which URLClassLoader searches right after it.
+     *
+     * @return false if the entry cannot be indexed
+     */
+    private boolean add(URL url, Deque<URL> urls) {
+        if (!url.getProtocol().equals(FILE_PROTOCOL)) {
+            return false;
+        }
+        File file;
+        try {
+            file = new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return false;
+        }
+        String base = url.toExternalForm();
+        if (base.endsWith("/")) {
+            return addDirectory(file.toPath(), base);
+        }
+        if (!file.isFile()) {
+            // like URLClassLoader, skip entries that do not exist
+            return true;
+        }
+        try (JarFile jar = new JarFile(file)) {
+            Manifest manifest = jar.getManifest();
+            boolean multiRelease = manifest != null && TRUE.equalsIgnoreCase(manifest.getMainAttributes()
+                    .getValue(MULTI_RELEASE));
+            String jarBase = multiRelease ? ASK_LOADER : JAR_PREFIX + base + JAR_SEPARATOR;
+            Enumeration<? extends ZipEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (multiRelease && name.startsWith(VERSIONS)) {
+                    // a class that is only in a versioned directory is found under its plain name
+                    int slash = name.indexOf('/', VERSIONS.length());
+                    name = slash < 0 ? EMPTY : name.substring(slash + 1);
+                }
+                if (name.endsWith(CLASS_EXTENSION) && isPlain(name)) {
+                    locations.putIfAbsent(name, jarBase);
+                }
+            }
+            String classPath = manifest == null ? null : manifest.getMainAttributes()
+                    .getValue(Attributes.Name.CLASS_PATH);
+            if (classPath != null) {
+                String[] paths = classPath.trim().split("\\s+");
+                for (int i = paths.length - 1; i >= 0; i--) {
+                    urls.addFirst(new URL(url, paths[i]));
+                }
+            }
+            return true;
+        } catch (IOException ioe) {
+            LOGGER.log(Level.FINE, "Could not index " + file, ioe);
+            return false;
+        }
+    }
+
+    private boolean addDirectory(Path dir, String base) {
+        if (!Files.isDirectory(dir)) {
+            return true;
+        }
+        try (Stream<Path> files = Files.walk(dir, FileVisitOption.FOLLOW_LINKS)) {
+            files.forEach(path -> {
+                String name = dir.relativize(path).toString().replace(File.separatorChar, '/');
+                if (name.endsWith(CLASS_EXTENSION) && isPlain(name)) {
+                    locations.putIfAbsent(name, base);
+                }
+            });
+            return true;
+        } catch (IOException | UncheckedIOException ex) {
+            LOGGER.log(Level.FINE, "Could not index " + dir, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Check if the name of a class file is the same in a URL, where the loader would encode other characters.
+     * The loader finds the other class files, as they are not indexed.
+     */
+    private static boolean isPlain(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (!(ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z' || ch >= '0' && ch <= '9' || ch == '/'
+                    || ch == '.' || ch == '$' || ch == '_' || ch == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -3,15 +3,15 @@ package edu.illinois.starts.util;
 import java.util.Map;
 import java.util.Set;
 
-import edu.illinois.yasgl.DirectedGraph;
+import edu.illinois.starts.data.DependencyGraph;
 
 public class Result {
     private final Map<String, Set<String>> testDeps;
-    private final DirectedGraph<String> graph;
+    private final DependencyGraph graph;
     private final Set<String> affectedTests;
     private final Set<String> unreachedDeps;
 
-    public Result(Map<String, Set<String>> testDeps, DirectedGraph<String> graph,
+    public Result(Map<String, Set<String>> testDeps, DependencyGraph graph,
                   Set<String> affectedTests, Set<String> unreached) {
         this.testDeps = testDeps;
         this.graph = graph;
@@ -23,7 +23,7 @@ public class Result {
         return testDeps;
     }
 
-    public DirectedGraph<String> getGraph() {
+    public DependencyGraph getGraph() {
         return graph;
     }
 
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import edu.illinois.starts.constants.StartsConstants;
+import edu.illinois.starts.util.Pair;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ASMHelperTest implements StartsConstants {
+
+    public static String classesDir;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        classesDir = new File(ASMHelper.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .getAbsolutePath();
+    }
+
+    @Test
+    public void testAddSignatureTypes() {
+        Set<String> names = new HashSet<>();
+        ASMHelper.addSignatureTypes("<K:Lp/Key;V::Lp/Value;>(Ljava/util/Map<TK;+[Lp/Elem;>;"
+                + "Lp/Outer<*>.Inner<Lp/Arg;>;)[I^Lp/Failure;", names);
+        assertEquals(new HashSet<>(Arrays.asList("p/Key", "p/Value", "java/util/Map", "p/Elem", "p/Outer",
+                "p/Outer$Inner", "p/Arg", "p/Failure")), names);
+    }
+
+    @Test
+    public void testGetDepsFromClassFile() throws Exception {
+        try (InputStream is = Pair.class.getResourceAsStream("Pair.class")) {
+            Set<String> deps = ASMHelper.getDepsFromClassFile(ASMHelper.readBytes(is, 0),
+                    Pattern.compile(LIB_FILTER));
+            assertEquals(Collections.singleton(StartsConstants.class.getName()), deps);
+        }
+        try (InputStream is = Pair.class.getResourceAsStream("Pair.class")) {
+            Set<String> deps = ASMHelper.getDepsFromClassFile(ASMHelper.readBytes(is, 0), null);
+            assertTrue(deps.contains("java.io.Serializable"));
+            assertFalse(deps.contains(Pair.class.getName()));
+        }
+    }
+
+    @Test
+    public void testParallelRunASMMatchesSequential() throws Exception {
+        String jar = new File(Test.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .getAbsolutePath();
+        List<String> paths = Arrays.asList(classesDir, jar);
+        Map<String, Set<String>> sequential = ASMHelper.runASM(paths, true, 1);
+        Map<String, Set<String>> parallel = ASMHelper.runASM(paths, true, 4);
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void testRunASMCoversJdeps() {
+        Map<String, Set<String>> asmDeps = ASMHelper.runASM(Collections.singletonList(classesDir), true);
+        List<String> args = new ArrayList<>(Arrays.asList("-v", "-filter", LIB_FILTER, "-cp", classesDir,
+                classesDir));
+        Map<String, Set<String>> jdepsDeps = RTSUtil.runJdeps(args);
+        assertEquals(jdepsDeps.keySet(), asmDeps.keySet());
+        for (String klas : jdepsDeps.keySet()) {
+            assertTrue(klas, asmDeps.get(klas).containsAll(jdepsDeps.get(klas)));
+        }
+    }
+}
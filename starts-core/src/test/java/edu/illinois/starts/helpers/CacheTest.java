@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+
+import edu.illinois.starts.data.DependencyGraph;
+import edu.illinois.starts.enums.DependencyExtractor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheTest {
+
+    private Path tmpDir;
+    private File jdepsCache;
+    private String jar;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("cache");
+        jdepsCache = tmpDir.resolve("jdeps-cache").toFile();
+        Path m2Repo = tmpDir.resolve("m2");
+        jar = m2Repo.resolve("org").resolve("lib").resolve("lib-1.0.jar").toString();
+        Path textFile = jdepsCache.toPath().resolve("org").resolve("lib").resolve("lib-1.0.graph");
+        Files.createDirectories(textFile.getParent());
+        Files.write(textFile, Arrays.asList("org.lib.A org.lib.B", "org.lib.A org.lib.C", "org.lib.A org.lib.B",
+                "org.lib.B java.lang.Object", "not an edge"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.walk(tmpDir).sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void testTextGraphIsMigratedToBinary() throws Exception {
+        Cache cache = new Cache(jdepsCache, tmpDir.resolve("m2").toString());
+        List<JarGraphFile> graphs = cache.loadM2GraphsFromCache(jar);
+        assertEquals(1, graphs.size());
+        assertTrue(new File(jdepsCache, "org/lib/lib-1.0" + JarGraphFile.BINARY_GRAPH_EXTENSION).exists());
+        // the text file stays for older versions
+        assertTrue(new File(jdepsCache, "org/lib/lib-1.0.graph").exists());
+
+        // duplicate edges and broken lines are dropped, and every name is stored once
+        JarGraphFile graph = graphs.get(0);
+        assertEquals(4, graph.getNamesCount());
+        assertEquals(3, graph.getEdgesCount());
+        assertEquals(new HashSet<>(Arrays.asList("org.lib.A org.lib.B", "org.lib.A org.lib.C",
+                "org.lib.B java.lang.Object")), new HashSet<>(graph.toLines()));
+
+        DependencyGraph.Builder builder = new DependencyGraph.Builder().addEdge("Test", "org.lib.A");
+        graph.addTo(builder);
+        DependencyGraph dependencyGraph = builder.build();
+        assertEquals(5, dependencyGraph.getVerticesCount());
+        assertEquals(4, dependencyGraph.reachableFrom(dependencyGraph.getId("org.lib.A")).cardinality());
+
+        // the next run reads the binary file, with the same edges
+        assertEquals(new HashSet<>(graph.toLines()), new HashSet<>(cache.loadM2EdgesFromCache(jar)));
+    }
+
+    @Test
+    public void testContentAddressedCacheIsSharedByIdenticalJars() throws Exception {
+        // two copies of the same jar, e.g., in the repositories of two projects, share one graph
+        Path first = tmpDir.resolve("first").resolve("lib.jar");
+        Path second = tmpDir.resolve("second").resolve("lib-copy.jar");
+        Files.createDirectories(first.getParent());
+        Files.createDirectories(second.getParent());
+        Files.write(first, new byte[] {1, 2, 3});
+        Files.write(second, new byte[] {1, 2, 3});
+        File sharedCache = tmpDir.resolve("shared").toFile();
+        String checksum = Writer.getJarToChecksumMapping(first.toString()).getValue();
+        Map<String, Set<String>> deps = new HashMap<>();
+        deps.put("org.lib.A", Collections.singleton("org.lib.B"));
+        JarGraphFile.write(deps, new File(new File(sharedCache, checksum.substring(0, 2)),
+                checksum + JarGraphFile.BINARY_GRAPH_EXTENSION));
+
+        Cache cache = new Cache(sharedCache, tmpDir.resolve("m2").toString(), true);
+        List<String> edges = cache.loadM2EdgesFromCache(first + File.pathSeparator + second);
+        assertEquals(Arrays.asList("org.lib.A org.lib.B", "org.lib.A org.lib.B"), edges);
+        // no temporary files are left behind
+        assertEquals(1, new File(sharedCache, checksum.substring(0, 2)).list().length);
+    }
+
+    @Test
+    public void testMissingJarsAreAnalyzedInParallel() throws Exception {
+        Path cacheJar = makeJar("cache.jar", Cache.class);
+        Path writerJar = makeJar("writer.jar", Writer.class);
+        Path copy = tmpDir.resolve("copy").resolve("cache.jar");
+        Files.createDirectories(copy.getParent());
+        Files.copy(cacheJar, copy);
+        File sharedCache = tmpDir.resolve("shared").toFile();
+        Cache cache = new Cache(sharedCache, tmpDir.resolve("m2").toString(), true,
+                DependencyExtractor.ASM, 4);
+        List<JarGraphFile> graphs = cache.loadM2GraphsFromCache(cacheJar + File.pathSeparator + writerJar
+                + File.pathSeparator + copy);
+        assertEquals(3, graphs.size());
+        DependencyGraph.Builder builder = new DependencyGraph.Builder();
+        for (JarGraphFile graph : graphs) {
+            graph.addTo(builder);
+        }
+        DependencyGraph graph = builder.build();
+        assertTrue(graph.getOutDegree(graph.getId(Cache.class.getName())) > 0);
+        assertTrue(graph.getOutDegree(graph.getId(Writer.class.getName())) > 0);
+        // the two copies of cache.jar share one graph, and the other jar has its own
+        assertEquals(2, Files.walk(sharedCache.toPath())
+                .filter(path -> path.toString().endsWith(JarGraphFile.BINARY_GRAPH_EXTENSION)).count());
+    }
+
+    @Test
+    public void testModulesOfOneBuildAnalyzeSharedJarOnce() throws Exception {
+        // the modules of a parallel build each have their own Cache, but they share the file locks of the JVM
+        String cacheJar = makeJar("cache.jar", Cache.class).toString();
+        File sharedCache = tmpDir.resolve("shared").toFile();
+        int modules = 8;
+        CyclicBarrier barrier = new CyclicBarrier(modules);
+        ExecutorService pool = Executors.newFixedThreadPool(modules);
+        try {
+            List<Future<List<JarGraphFile>>> results = new ArrayList<>();
+            for (int i = 0; i < modules; i++) {
+                results.add(pool.submit(() -> {
+                    Cache cache = new Cache(sharedCache, tmpDir.resolve("m2").toString(), true,
+                            DependencyExtractor.ASM, 1);
+                    barrier.await();
+                    return cache.loadM2GraphsFromCache(cacheJar);
+                }));
+            }
+            for (Future<List<JarGraphFile>> result : results) {
+                assertEquals(1, result.get().size());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        // the graph is named after the central directory of the jar, which is not hashed in full
+        List<Path> graphs = Files.walk(sharedCache.toPath())
+                .filter(path -> path.toString().endsWith(JarGraphFile.BINARY_GRAPH_EXTENSION))
+                .collect(Collectors.toList());
+        assertEquals(1, graphs.size());
+        assertTrue(graphs.get(0).getFileName().toString().startsWith("cd-"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedGraphsAreEvicted() throws Exception {
+        Map<String, Set<String>> deps = new HashMap<>();
+        deps.put("org.lib.A", Collections.singleton("org.lib.B"));
+        File old = new File(jdepsCache, "old/lib.bgraph");
+        File recent = new File(jdepsCache, "recent/lib.bgraph");
+        File used = new File(jdepsCache, "used/lib.bgraph");
+        File jdk = new File(jdepsCache, "rt.bgraph");
+        for (File file : Arrays.asList(old, recent, used, jdk)) {
+            JarGraphFile.write(deps, file);
+        }
+        Files.write(jdepsCache.toPath().resolve(CacheIndex.INDEX_FILE), Arrays.asList(
+                "1 " + new File("old", "lib.bgraph").getPath(), "2 " + new File("recent", "lib.bgraph").getPath()));
+        long graphSize = old.length();
+        // the text graph from setUp is also in the cache and was modified just now
+        long textSize = new File(jdepsCache, "org/lib/lib-1.0.graph").length();
+
+        CacheIndex.recordAndEvict(jdepsCache, Collections.singletonList(used), 2 * graphSize + textSize);
+        assertFalse(old.exists());
+        assertTrue(recent.exists());
+        assertTrue(used.exists());
+        List<String> index = Files.readAllLines(jdepsCache.toPath().resolve(CacheIndex.INDEX_FILE));
+        assertEquals(3, index.size());
+
+        // graphs in use and graphs at the root of the cache are never evicted
+        CacheIndex.recordAndEvict(jdepsCache, Collections.singletonList(used), 1);
+        assertFalse(recent.exists());
+        assertTrue(used.exists());
+        assertTrue(jdk.exists());
+    }
+
+    @Test
+    public void testCacheIndexIsUpdatedByManyThreadsAtOnce() throws Exception {
+        // the modules of a parallel build that share one cache update the index from the same JVM
+        Map<String, Set<String>> deps = new HashMap<>();
+        deps.put("org.lib.A", Collections.singleton("org.lib.B"));
+        int modules = 8;
+        List<File> graphs = new ArrayList<>();
+        for (int i = 0; i < modules; i++) {
+            File graph = new File(jdepsCache, "module" + i + "/lib.bgraph");
+            JarGraphFile.write(deps, graph);
+            graphs.add(graph);
+        }
+        CyclicBarrier barrier = new CyclicBarrier(modules);
+        ExecutorService pool = Executors.newFixedThreadPool(modules);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (File graph : graphs) {
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < 20; i++) {
+                        barrier.await();
+                        CacheIndex.recordAndEvict(jdepsCache, Collections.singletonList(graph), Long.MAX_VALUE);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        // every module's access was recorded, and nothing was evicted
+        List<String> index = Files.readAllLines(jdepsCache.toPath().resolve(CacheIndex.INDEX_FILE));
+        for (File graph : graphs) {
+            String path = jdepsCache.toPath().relativize(graph.toPath()).toString();
+            assertTrue(path, index.stream().anyMatch(line -> line.endsWith(" " + path)));
+            assertTrue(graph.exists());
+        }
+    }
+
+    private Path makeJar(String name, Class<?> clazz) throws Exception {
+        Path jarPath = tmpDir.resolve(name);
+        String entryName = clazz.getName().replace('.', '/') + ".class";
+        try (OutputStream out = Files.newOutputStream(jarPath);
+             JarOutputStream jar = new JarOutputStream(out);
+             InputStream in = clazz.getClassLoader().getResourceAsStream(entryName)) {
+            jar.putNextEntry(new JarEntry(entryName));
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                jar.write(buffer, 0, read);
+            }
+            jar.closeEntry();
+        }
+        return jarPath;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.illinois.starts.util.ChecksumUtil;
+import org.ekstazi.data.RegData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChecksumUtilTest {
+
+    private Path tmpDir;
+    private URL first;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("checksum");
+        first = copyClass(Writer.class, "First.class");
+        copyClass(Cache.class, "Second.class");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.walk(tmpDir).sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void testCheckSumMapSharesRegDataAcrossTests() throws Exception {
+        Map<String, Set<String>> testDeps = new HashMap<>();
+        testDeps.put("FirstTest", new HashSet<>(Arrays.asList("First", "Second", "Missing")));
+        testDeps.put("SecondTest", Collections.singleton("First"));
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {tmpDir.resolve("classes").toUri().toURL()},
+                null)) {
+            for (int threads : new int[] {1, 2}) {
+                Map<String, Set<RegData>> checksums = ChecksumUtil.makeCheckSumMap(loader, testDeps,
+                        testDeps.keySet(), threads);
+                assertEquals(2, checksums.get("FirstTest").size());
+                RegData shared = checksums.get("SecondTest").iterator().next();
+                assertEquals(first.toExternalForm(), shared.getURLExternalForm());
+                assertTrue(checksums.get("FirstTest").contains(shared));
+            }
+        }
+    }
+
+    private URL copyClass(Class<?> clazz, String name) throws Exception {
+        Path classFile = tmpDir.resolve("classes").resolve(name);
+        Files.createDirectories(classFile.getParent());
+        String resource = clazz.getName().replace('.', '/') + ".class";
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(resource)) {
+            Files.copy(in, classFile);
+        }
+        return classFile.toUri().toURL();
+    }
+}
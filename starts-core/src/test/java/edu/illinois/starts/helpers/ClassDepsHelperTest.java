@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ClassDepsHelperTest {
+
+    public static Path tmpDir;
+    public static Path classesDir;
+    public static Path artifactsDir;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        Path source = new File(ClassDepsHelper.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .toPath();
+        tmpDir = Files.createTempDirectory("class-deps");
+        classesDir = tmpDir.resolve("classes");
+        artifactsDir = Files.createDirectories(tmpDir.resolve(".starts"));
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Path target = classesDir.resolve(source.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+        }
+    }
+
+    @AfterClass
+    public static void cleanUp() throws Exception {
+        try (Stream<Path> files = Files.walk(tmpDir)) {
+            for (Path file : files.sorted(Collections.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateDepMapMatchesFullExtraction() throws Exception {
+        List<String> localPaths = Collections.singletonList(classesDir.toString());
+        String artifacts = artifactsDir.toString();
+        assertEquals(ASMHelper.runASM(localPaths, true), ClassDepsHelper.updateDepMap(artifacts, localPaths, true));
+        assertTrue(new File(artifacts, ClassDepsHelper.CLASS_DEPS_FILE).exists());
+        // nothing changed, every edge comes from the class-deps file
+        assertEquals(ASMHelper.runASM(localPaths, true), ClassDepsHelper.updateDepMap(artifacts, localPaths, true));
+
+        // replace one class with another, touch a third and delete a fourth
+        Path helpers = classesDir.resolve("edu/illinois/starts/helpers");
+        Files.copy(helpers.resolve("Writer.class"), helpers.resolve("Cache.class"),
+                StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(helpers.resolve("RTSUtil.class"),
+                FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        Files.delete(helpers.resolve("YasglHelper.class"));
+        Map<String, Set<String>> incremental = ClassDepsHelper.updateDepMap(artifacts, localPaths, true);
+        assertEquals(ASMHelper.runASM(localPaths, true), incremental);
+
+        // a different filter invalidates the stored edges
+        assertEquals(ASMHelper.runASM(localPaths, false), ClassDepsHelper.updateDepMap(artifacts, localPaths, false));
+    }
+
+    @Test
+    public void testRacyClassFileIsScannedAgain() throws Exception {
+        Path dir = Files.createDirectories(tmpDir.resolve("racy"));
+        Path classFile = dir.resolve("ClassDepsData.class");
+        Path classes = new File(ClassDepsHelper.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .toPath();
+        byte[] bytes = Files.readAllBytes(classes.resolve("edu/illinois/starts/data/ClassDepsData.class"));
+        Files.write(classFile, bytes);
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        Files.setLastModifiedTime(classFile, now);
+        List<String> localPaths = Collections.singletonList(dir.toString());
+        String artifacts = Files.createDirectories(tmpDir.resolve(".starts-racy")).toString();
+        Set<String> deps = ClassDepsHelper.updateDepMap(artifacts, localPaths, false)
+                .get("edu.illinois.starts.data.ClassDepsData");
+        assertTrue(deps.contains("java.util.Set"));
+
+        // a recompile within the resolution of the modification time keeps the size and the timestamp
+        String latin = new String(bytes, StandardCharsets.ISO_8859_1).replace("java/util/Set", "java/util/Map");
+        Files.write(classFile, latin.getBytes(StandardCharsets.ISO_8859_1));
+        Files.setLastModifiedTime(classFile, now);
+        deps = ClassDepsHelper.updateDepMap(artifacts, localPaths, false).get("edu.illinois.starts.data.ClassDepsData");
+        assertTrue(deps.contains("java.util.Map"));
+        assertFalse(deps.contains("java.util.Set"));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import edu.illinois.starts.util.ChecksumUtil;
+import edu.illinois.starts.util.ClassPathIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClassPathIndexTest {
+
+    private static final String PKG = "edu.illinois.starts.helpers.";
+
+    private Path tmpDir;
+    private Path classesDir;
+    private Path helpers;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("index");
+        classesDir = tmpDir.resolve("classes");
+        helpers = classesDir.resolve("edu/illinois/starts/helpers");
+        for (Class<?> clazz : Arrays.asList(Writer.class, Cache.class, FileUtil.class, ZLCHelper.class,
+                PomUtil.class)) {
+            copyClass(clazz);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.walk(tmpDir).sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void testClassPathIndexMatchesClassLoader() throws Exception {
+        Map<String, Path> oldEntries = new HashMap<>();
+        for (String klas : Arrays.asList("Writer", "Cache", "FileUtil")) {
+            oldEntries.put(klas, helpers.resolve(klas + ".class"));
+        }
+        Path oldJar = makeJar(tmpDir.resolve("lib-1.0.jar"), oldEntries);
+        Path newJar = makeJar(tmpDir.resolve("lib-2.0.jar"), Collections.singletonMap("Writer",
+                helpers.resolve("PomUtil.class")));
+        // a jar whose manifest puts the new jar on the classpath, right after itself
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, newJar.getFileName().toString());
+        Path manifestJar = tmpDir.resolve("manifest.jar");
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(manifestJar), manifest)) {
+            jar.putNextEntry(new JarEntry("a b/C.class"));
+            jar.closeEntry();
+        }
+        URLClassLoader classPathLoader = new URLClassLoader(new URL[] {manifestJar.toUri().toURL(),
+            oldJar.toUri().toURL(), classesDir.toUri().toURL(), tmpDir.resolve("missing").toUri().toURL()}, null);
+        ClassPathIndex index = ClassPathIndex.create(classPathLoader);
+        for (String klas : Arrays.asList("Writer", "Cache", "FileUtil", "ZLCHelper", "Missing")) {
+            String className = ChecksumUtil.toClassName(PKG + klas);
+            URL url = classPathLoader.getResource(className);
+            assertEquals(klas, url == null ? null : url.toExternalForm(), index.getLocation(className));
+        }
+        assertTrue(index.getLocation("edu/illinois/starts/helpers/Writer.class").contains("lib-2.0.jar"));
+        assertEquals(classPathLoader.getResource("a b/C.class"), index.getResource("a b/C.class"));
+        assertEquals(classPathLoader.getResource("java/lang/Object.class").toExternalForm(),
+                index.getLocation("java/lang/Object.class"));
+    }
+
+    @Test
+    public void testBootstrapClassesAreNotTakenFromClassPath() throws Exception {
+        // the JDK has classes outside of java/, which the loader finds before any on its classpath
+        List<String> classNames = Arrays.asList("java/lang/String.class", "javax/net/SocketFactory.class",
+                "jdk/internal/misc/Unsafe.class", "sun/misc/Unsafe.class");
+        for (String className : classNames) {
+            Path classFile = classesDir.resolve(className);
+            Files.createDirectories(classFile.getParent());
+            Files.copy(helpers.resolve("Writer.class"), classFile);
+        }
+        URLClassLoader classPathLoader = new URLClassLoader(new URL[] {classesDir.toUri().toURL()}, null);
+        ClassPathIndex index = ClassPathIndex.create(classPathLoader);
+        for (String className : classNames) {
+            assertEquals(className, classPathLoader.getResource(className).toExternalForm(),
+                    index.getLocation(className));
+        }
+    }
+
+    @Test
+    public void testMultiReleaseJarsAreLeftToClassLoader() throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Multi-Release", "true");
+        Path multiReleaseJar = tmpDir.resolve("multi-release.jar");
+        String writer = ChecksumUtil.toClassName(PKG + "Writer");
+        String cache = ChecksumUtil.toClassName(PKG + "Cache");
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(multiReleaseJar), manifest)) {
+            jar.putNextEntry(new JarEntry(writer));
+            jar.write(Files.readAllBytes(helpers.resolve("Writer.class")));
+            jar.closeEntry();
+            // on Java 9 and later the loader finds these entries instead of the plain ones
+            jar.putNextEntry(new JarEntry("META-INF/versions/9/" + writer));
+            jar.write(Files.readAllBytes(helpers.resolve("PomUtil.class")));
+            jar.closeEntry();
+            jar.putNextEntry(new JarEntry("META-INF/versions/9/" + cache));
+            jar.write(Files.readAllBytes(helpers.resolve("Cache.class")));
+            jar.closeEntry();
+        }
+        URLClassLoader classPathLoader = new URLClassLoader(new URL[] {multiReleaseJar.toUri().toURL(),
+            classesDir.toUri().toURL()}, null);
+        ClassPathIndex index = ClassPathIndex.create(classPathLoader);
+        for (String className : Arrays.asList(writer, cache, ChecksumUtil.toClassName(PKG + "FileUtil"))) {
+            URL url = classPathLoader.getResource(className);
+            assertEquals(className, url.toExternalForm(), index.getLocation(className));
+        }
+    }
+
+    private static Path makeJar(Path jarPath, Map<String, Path> entries) throws Exception {
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(jarPath))) {
+            for (Map.Entry<String, Path> entry : entries.entrySet()) {
+                jar.putNextEntry(new JarEntry("edu/illinois/starts/helpers/" + entry.getKey() + ".class"));
+                jar.write(Files.readAllBytes(entry.getValue()));
+                jar.closeEntry();
+            }
+        }
+        return jarPath;
+    }
+
+    private void copyClass(Class<?> clazz) throws Exception {
+        String resource = clazz.getName().replace('.', '/') + ".class";
+        Path classFile = classesDir.resolve(resource);
+        Files.createDirectories(classFile.getParent());
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(resource)) {
+            Files.copy(in, classFile);
+        }
+    }
+}
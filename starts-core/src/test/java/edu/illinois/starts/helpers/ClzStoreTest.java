@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.illinois.starts.util.ChecksumUtil;
+import edu.illinois.starts.util.Pair;
+import org.ekstazi.data.RegData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClzStoreTest {
+
+    private Path tmpDir;
+    private String artifactsDir;
+    private URL first;
+    private URL second;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("clz");
+        artifactsDir = tmpDir.resolve(".starts").toString() + File.separator;
+        first = copyClass(Writer.class, "First.class");
+        second = copyClass(Cache.class, "Second.class");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.walk(tmpDir).sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void testStoreFindsNonAffectedTests() throws Exception {
+        assertFalse(ClzStore.exists(artifactsDir));
+        Map<String, Set<RegData>> checksums = new HashMap<>();
+        checksums.put("FirstTest", regData(first));
+        checksums.put("SecondTest", regData(second));
+        checksums.put("BothTest", regData(first, second));
+        // a test without dependencies is always affected
+        checksums.put("NoDepsTest", regData());
+        ClzStore.save(checksums, checksums.keySet(), artifactsDir);
+        assertTrue(ClzStore.exists(artifactsDir));
+
+        Pair<Set<String>, Set<String>> data = ClzStore.getChangedData(artifactsDir, 1);
+        assertEquals(new HashSet<>(Arrays.asList("FirstTest", "SecondTest", "BothTest")), data.getKey());
+        assertTrue(data.getValue().isEmpty());
+
+        copyClass(ClzStore.class, "Second.class");
+        data = ClzStore.getChangedData(artifactsDir, 2);
+        assertEquals(Collections.singleton("FirstTest"), data.getKey());
+        assertEquals(Collections.singleton(second.toExternalForm()), data.getValue());
+
+        // saving the affected tests again keeps what was saved for the other tests
+        Set<String> allTests = new HashSet<>(checksums.keySet());
+        checksums.clear();
+        checksums.put("SecondTest", regData(second));
+        checksums.put("BothTest", regData(first, second));
+        ClzStore.save(checksums, allTests, artifactsDir);
+        data = ClzStore.getChangedData(artifactsDir, 1);
+        assertEquals(new HashSet<>(Arrays.asList("FirstTest", "SecondTest", "BothTest")), data.getKey());
+
+        // and drops what was saved for the tests that were deleted
+        allTests.remove("FirstTest");
+        ClzStore.save(checksums, allTests, artifactsDir);
+        data = ClzStore.getChangedData(artifactsDir, 1);
+        assertEquals(new HashSet<>(Arrays.asList("SecondTest", "BothTest")), data.getKey());
+    }
+
+    @Test
+    public void testUnreadableStoreIsAFirstRun() throws Exception {
+        Files.createDirectories(new File(artifactsDir).toPath());
+        Files.write(new File(artifactsDir, ClzStore.CLZ_STORE).toPath(), new byte[] {1, 2, 3});
+        assertNull(ClzStore.getChangedData(artifactsDir, 1));
+    }
+
+    @Test
+    public void testClzFilesAreCheckedInProcess() throws Exception {
+        assertNull(EkstaziHelper.getNonAffectedTests(artifactsDir, 1));
+        Files.createDirectories(new File(artifactsDir).toPath());
+        ChecksumUtil.writeChecksumFile(ChecksumUtil.makeCheckSumPath("FirstTest", artifactsDir), regData(first));
+        ChecksumUtil.writeChecksumFile(ChecksumUtil.makeCheckSumPath("BothTest", artifactsDir),
+                regData(first, second));
+        ChecksumUtil.writeChecksumFile(ChecksumUtil.makeCheckSumPath("NoDepsTest", artifactsDir), regData());
+        new File(artifactsDir, EkstaziHelper.notFirstRunMarker).createNewFile();
+        // a test without dependencies is always affected
+        assertEquals(new HashSet<>(Arrays.asList("FirstTest", "BothTest")),
+                EkstaziHelper.getNonAffectedTests(artifactsDir, 1).getKey());
+
+        copyClass(ClzStore.class, "Second.class");
+        Pair<Set<String>, Set<String>> data = EkstaziHelper.getNonAffectedTests(artifactsDir, 2);
+        assertEquals(Collections.singleton("FirstTest"), data.getKey());
+        assertEquals(Collections.singleton(second.toExternalForm()), data.getValue());
+    }
+
+    private Set<RegData> regData(URL... urls) {
+        ChecksumUtil checksumUtil = new ChecksumUtil(true);
+        Set<RegData> regData = new HashSet<>();
+        for (URL url : urls) {
+            regData.add(checksumUtil.computeChecksumRegData(url));
+        }
+        return regData;
+    }
+
+    private URL copyClass(Class<?> clazz, String name) throws Exception {
+        Path classFile = tmpDir.resolve("classes").resolve(name);
+        Files.createDirectories(classFile.getParent());
+        String resource = clazz.getName().replace('.', '/') + ".class";
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(resource)) {
+            Files.copy(in, classFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return classFile.toUri().toURL();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import edu.illinois.starts.data.DependencyGraph;
+import edu.illinois.starts.data.TransitiveClosure;
+import edu.illinois.yasgl.DirectedGraph;
+import edu.illinois.yasgl.DirectedGraphBuilder;
+import org.junit.Test;
+
+public class DependencyGraphTest {
+
+    @Test
+    public void testBuilderDropsDuplicateEdges() {
+        DependencyGraph graph = new DependencyGraph.Builder().addEdge("A", "C").addEdge("A", "B")
+                .addEdge("A", "C").addEdge("B", "C").build();
+        assertEquals(3, graph.getVerticesCount());
+        assertEquals(3, graph.getEdgesCount());
+        int idA = graph.getId("A");
+        assertEquals(2, graph.getOutDegree(idA));
+        // successors are sorted by ID, which is the order in which vertices were first added
+        assertEquals("C", graph.getName(graph.getSuccessor(idA, 0)));
+        assertEquals("B", graph.getName(graph.getSuccessor(idA, 1)));
+        assertEquals(0, graph.getOutDegree(graph.getId("C")));
+        assertEquals(-1, graph.getId("D"));
+    }
+
+    @Test
+    public void testComponentsAreInReverseTopologicalOrder() {
+        // A -> B -> C -> B, C -> D, and E is alone
+        DependencyGraph graph = new DependencyGraph.Builder().addEdge("A", "B").addEdge("B", "C")
+                .addEdge("C", "B").addEdge("C", "D").addEdge("E", "E").build();
+        int[] components = graph.getComponents();
+        int idA = graph.getId("A");
+        int idB = graph.getId("B");
+        int idC = graph.getId("C");
+        int idD = graph.getId("D");
+        assertEquals(components[idB], components[idC]);
+        assertTrue(components[idA] > components[idB]);
+        assertTrue(components[idB] > components[idD]);
+        assertEquals(4, Arrays.stream(components).distinct().count());
+    }
+
+    @Test
+    public void testCondensedClosureMatchesTraversal() {
+        Random random = new Random(7);
+        for (int edges : Arrays.asList(300, 600, 1500)) {
+            DependencyGraph.Builder builder = new DependencyGraph.Builder();
+            for (int i = 0; i < edges; i++) {
+                builder.addEdge("C" + random.nextInt(500), "C" + random.nextInt(500));
+            }
+            DependencyGraph graph = builder.build();
+            List<String> tests = new ArrayList<>();
+            for (int i = 0; i < 500; i += 3) {
+                tests.add("C" + i);
+            }
+            TransitiveClosure closure = TransitiveClosure.compute(graph, tests);
+            TransitiveClosure parallel = TransitiveClosure.compute(graph, tests, 4);
+            for (String test : tests) {
+                int id = graph.getId(test);
+                BitSet expected = id < 0 ? new BitSet() : graph.reachableFrom(id);
+                assertEquals(test, expected, closure.getClosure(test));
+                assertEquals(test, expected, parallel.getClosure(test));
+            }
+        }
+    }
+
+    @Test
+    public void testClosureMatchesYasgl() {
+        Random random = new Random(42);
+        DependencyGraph.Builder builder = new DependencyGraph.Builder();
+        DirectedGraphBuilder<String> yasglBuilder = new DirectedGraphBuilder<>();
+        for (int i = 0; i < 2000; i++) {
+            String source = "C" + random.nextInt(500);
+            String destination = "C" + random.nextInt(500);
+            builder.addEdge(source, destination);
+            yasglBuilder.addEdge(source, destination);
+        }
+        DependencyGraph graph = builder.build();
+        DirectedGraph<String> yasglGraph = yasglBuilder.build();
+        List<String> tests = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            tests.add("C" + i * 10);
+        }
+        tests.add("TestNotInGraph");
+        TransitiveClosure closure = Loadables.getTransitiveClosurePerClass(graph, tests);
+        for (String test : tests) {
+            if (graph.getId(test) < 0) {
+                continue;
+            }
+            Set<String> expected = YasglHelper.computeReachabilityFromChangedClasses(
+                    new HashSet<>(Collections.singletonList(test)), yasglGraph);
+            expected.add(test);
+            assertEquals(test, expected, closure.get(test));
+        }
+        assertEquals(new HashSet<>(tests), closure.keySet());
+        assertNull(closure.get("C1"));
+
+        // inverting the bitsets directly gives the same result as inverting the decoded sets
+        Map<String, Set<String>> decoded = new HashMap<>(closure);
+        assertEquals(ZLCHelper.invertTestDeps(tests, decoded), ZLCHelper.invertTestDeps(tests, closure));
+        BitSet reached = closure.getReached();
+        Set<String> expectedReached = new HashSet<>();
+        for (Set<String> deps : decoded.values()) {
+            expectedReached.addAll(deps);
+        }
+        expectedReached.remove("TestNotInGraph");
+        assertEquals(expectedReached, graph.toNames(reached));
+        assertEquals(new HashSet<>(Arrays.asList("TestNotInGraph")), closure.get("TestNotInGraph"));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+
+import edu.illinois.starts.util.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JarFingerprintTest {
+
+    private Path tmpDir;
+    private String cacheJar;
+    private String[] fields;
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("fingerprint");
+        cacheJar = makeJar("cache.jar", Cache.class).toString();
+        // jars modified just before they are fingerprinted are never trusted, so pretend it was built earlier
+        new File(cacheJar).setLastModified(System.currentTimeMillis() - 3600000);
+        fields = JarFingerprint.getFingerprint(cacheJar, null, false).getValue().split(",");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.walk(tmpDir).sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void testCentralDirectoryIsHashedUnlessUnchanged() throws Exception {
+        assertTrue(fields[0].startsWith("cd:"));
+        assertEquals(String.valueOf(new File(cacheJar).length()), fields[1]);
+
+        // a jar with the same size and modification time is not read again
+        String[] oldLine = {cacheJar, "old", fields[1], fields[2], fields[3]};
+        assertEquals("old", JarFingerprint.getChecksum(JarFingerprint.getFingerprint(cacheJar, oldLine, false)
+                .getValue()));
+        // unless it was modified right before it was fingerprinted, or the line has no fingerprinting time
+        String[] racyLine = {cacheJar, "old", fields[1], fields[2], String.valueOf(Long.parseLong(fields[2]) + 1000)};
+        assertEquals(fields[0], JarFingerprint.getChecksum(JarFingerprint.getFingerprint(cacheJar, racyLine, false)
+                .getValue()));
+        String[] untimedLine = {cacheJar, "old", fields[1], fields[2]};
+        assertEquals(fields[0], JarFingerprint.getChecksum(JarFingerprint.getFingerprint(cacheJar, untimedLine,
+                false).getValue()));
+        // unless the jar is always hashed in full
+        String fullHash = Writer.getJarToChecksumMapping(cacheJar).getValue();
+        assertEquals(fullHash, JarFingerprint.getChecksum(JarFingerprint.getFingerprint(cacheJar, oldLine, true)
+                .getValue()));
+
+        // a changed entry changes the central directory
+        String writerJar = makeJar("writer.jar", Writer.class).toString();
+        assertFalse(fields[0].equals(JarFingerprint.hashCentralDirectory(new File(writerJar))));
+        // and files that are not zip files are hashed in full
+        Path notJar = tmpDir.resolve("not.jar");
+        Files.write(notJar, new byte[] {1, 2, 3});
+        assertEquals(Writer.getJarToChecksumMapping(notJar.toString()).getValue(),
+                JarFingerprint.getChecksum(JarFingerprint.getFingerprint(notJar.toString(), null, false).getValue()));
+    }
+
+    @Test
+    public void testOldKindsOfChecksumsStillMatch() throws Exception {
+        String value = String.join(",", fields);
+        String fullHash = Writer.getJarToChecksumMapping(cacheJar).getValue();
+        // a "path,checksum" line of an older version, or of a run without fingerprints
+        String[] legacyLine = {cacheJar, fullHash};
+        assertTrue(JarFingerprint.isUnchanged(cacheJar, legacyLine, value));
+        assertTrue(JarFingerprint.isNewValue(legacyLine, value));
+        // a line written before fullJarChecksums was turned on, and after it was turned off
+        String[] centralDirectoryLine = {cacheJar, fields[0], fields[1], fields[2], fields[3]};
+        String fullValue = JarFingerprint.getFingerprint(cacheJar, centralDirectoryLine, true).getValue();
+        assertTrue(JarFingerprint.isUnchanged(cacheJar, centralDirectoryLine, fullValue));
+        assertTrue(JarFingerprint.isUnchanged(cacheJar, (cacheJar + "," + fullValue).split(","), value));
+        assertFalse(JarFingerprint.isNewValue(centralDirectoryLine, value));
+
+        // a jar that did change does not match either kind
+        String writerJar = makeJar("writer.jar", Writer.class).toString();
+        String writerValue = JarFingerprint.getFingerprint(writerJar, null, false).getValue();
+        assertFalse(JarFingerprint.isUnchanged(writerJar, legacyLine, writerValue));
+        assertFalse(JarFingerprint.isUnchanged(writerJar, centralDirectoryLine, writerValue));
+        assertFalse(JarFingerprint.isUnchanged(writerJar, null, writerValue));
+    }
+
+    @Test
+    public void testParallelFingerprintsMatchSequentialOnes() throws Exception {
+        String writerJar = makeJar("writer.jar", Writer.class).toString();
+        Path notJar = tmpDir.resolve("not.jar");
+        Files.write(notJar, new byte[] {1, 2, 3});
+        String[] oldLine = {cacheJar, "old", fields[1], fields[2], fields[3]};
+        // fingerprinting in parallel gives the same fingerprints, in the same order
+        List<String> jars = Arrays.asList(cacheJar, writerJar, notJar.toString(), cacheJar);
+        Map<String, String[]> oldLines = Collections.singletonMap(cacheJar, oldLine);
+        assertEquals(getChecksums(JarFingerprint.getFingerprints(jars, oldLines, false, 1)),
+                getChecksums(JarFingerprint.getFingerprints(jars, oldLines, false, 3)));
+    }
+
+    private static List<String> getChecksums(List<Pair<String, String>> fingerprints) {
+        // the times at which the jars were fingerprinted differ between the runs
+        return fingerprints.stream().map(pair -> pair.getKey() + "," + JarFingerprint.getChecksum(pair.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    private Path makeJar(String name, Class<?> clazz) throws Exception {
+        Path jarPath = tmpDir.resolve(name);
+        String entryName = clazz.getName().replace('.', '/') + ".class";
+        try (OutputStream out = Files.newOutputStream(jarPath);
+             JarOutputStream jar = new JarOutputStream(out);
+             InputStream in = clazz.getClassLoader().getResourceAsStream(entryName)) {
+            jar.putNextEntry(new JarEntry(entryName));
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                jar.write(buffer, 0, read);
+            }
+            jar.closeEntry();
+        }
+        return jarPath;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class JdepsOutputParserTest {
+
+    @Test
+    public void testJdepsOutputIsParsedAsItIsWritten() {
+        String output = "classes -> java.base\n"
+                + "   a.b.C          -> a.b.D        classes\r\n"
+                + "   a.b.C          -> java.lang.Object   java.base\n"
+                + "   a.b.D          -> a.b.C        classes";
+        JdepsOutputParser parser = new JdepsOutputParser();
+        // jdeps writes its output in pieces that do not end at line boundaries
+        for (int i = 0; i < output.length(); i += 7) {
+            parser.write(output, i, Math.min(7, output.length() - i));
+            // and may flush them in the middle of a line
+            parser.flush();
+        }
+        // the last line has no line separator, so it is only parsed when the output ends
+        assertEquals(Collections.singleton("a.b.C"), parser.getDeps().keySet());
+        parser.close();
+        Map<String, Set<String>> deps = parser.getDeps();
+        assertEquals(new HashSet<>(Arrays.asList("a.b.D", "java.lang.Object")), deps.get("a.b.C"));
+        assertEquals(Collections.singleton("a.b.C"), deps.get("a.b.D"));
+        assertEquals(2, deps.size());
+    }
+
+    @Test
+    public void testLinesWithoutDependencyAreSkipped() {
+        JdepsOutputParser parser = new JdepsOutputParser();
+        parser.write("   a.b.C          ->\n");
+        parser.write("   a.b.C          ->    \n");
+        parser.write("   a.b.D          -> a.b.C        classes\n");
+        parser.write("   a.b.E          ->");
+        parser.close();
+        Map<String, Set<String>> deps = parser.getDeps();
+        assertEquals(Collections.singletonMap("a.b.D", Collections.singleton("a.b.C")), deps);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+
+import edu.illinois.starts.util.Logger;
+
+/**
+ * Compares scanning every test for every dependency against the inverted index used by
+ * ZLCHelper.createZLCData, on a synthetic transitive closure. It is not run as part of the build:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes edu.illinois.starts.helpers.ZLCHelperBenchmark [tests deps depsPerTest]
+ * </pre>
+ */
+public class ZLCHelperBenchmark {
+    private static final Logger LOGGER = Logger.getGlobal();
+
+    public static void main(String[] args) {
+        int testsCount = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int depsCount = args.length > 1 ? Integer.parseInt(args[1]) : 60000;
+        int depsPerTest = args.length > 2 ? Integer.parseInt(args[2]) : 1500;
+
+        Random random = new Random(0);
+        List<String> testList = new ArrayList<>();
+        Map<String, Set<String>> testDeps = new HashMap<>();
+        for (int i = 0; i < testsCount; i++) {
+            String test = "test.Test" + i;
+            Set<String> deps = new HashSet<>();
+            for (int j = 0; j < depsPerTest; j++) {
+                deps.add("dep.Class" + random.nextInt(depsCount));
+            }
+            testList.add(test);
+            testDeps.put(test, deps);
+        }
+        LOGGER.log(Level.INFO, "tests: " + testsCount + ", deps: " + depsCount + ", deps per test: " + depsPerTest);
+
+        long start = System.currentTimeMillis();
+        Map<String, BitSet> inverted = ZLCHelper.invertTestDeps(testList, testDeps);
+        long end = System.currentTimeMillis();
+        LOGGER.log(Level.INFO, "inverted index: " + (end - start) + "ms");
+
+        start = System.currentTimeMillis();
+        Map<String, BitSet> scanned = new HashMap<>();
+        for (String dep : inverted.keySet()) {
+            BitSet testsIdx = new BitSet();
+            for (int i = 0; i < testList.size(); i++) {
+                if (testDeps.get(testList.get(i)).contains(dep)) {
+                    testsIdx.set(i);
+                }
+            }
+            scanned.put(dep, testsIdx);
+        }
+        end = System.currentTimeMillis();
+        LOGGER.log(Level.INFO, "scan per dependency: " + (end - start) + "ms");
+        if (!scanned.equals(inverted)) {
+            throw new IllegalStateException("The inverted index does not match the scan");
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2015 - Present. The STARTS Team. All Rights Reserved.
+ */
+
+package edu.illinois.starts.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import edu.illinois.starts.data.DependencyGraph;
+import edu.illinois.starts.data.TransitiveClosure;
+import edu.illinois.starts.data.ZLCFormat;
+import edu.illinois.starts.util.CheckSumCache;
+import edu.illinois.starts.util.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZLCHelperTest {
+
+    private static final String PKG = "edu.illinois.starts.helpers.";
+
+    private Path tmpDir;
+    private Path classesDir;
+    private ClassLoader loader;
+
+    @Before
+    public void setUp() throws Exception {
+        Path source = new File(ZLCHelper.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .toPath();
+        tmpDir = Files.createTempDirectory("zlc");
+        classesDir = tmpDir.resolve("classes");
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Path target = classesDir.resolve(source.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(file, target);
+                }
+            }
+        }
+        // no parent, so that every class is found in the copy
+        loader = new URLClassLoader(new URL[] {classesDir.toUri().toURL()}, null);
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        try (Stream<Path> files = Files.walk(tmpDir)) {
+            for (Path file : files.sorted(Collections.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalPlainTextMatchesFullRegeneration() throws Exception {
+        checkIncrementalMatchesFullRegeneration(ZLCFormat.PLAIN_TEXT);
+    }
+
+    @Test
+    public void testIncrementalIndexedMatchesFullRegeneration() throws Exception {
+        checkIncrementalMatchesFullRegeneration(ZLCFormat.INDEXED);
+    }
+
+    @Test
+    public void testIncrementalBinaryMatchesFullRegeneration() throws Exception {
+        checkIncrementalMatchesFullRegeneration(ZLCFormat.BINARY);
+    }
+
+    @Test
+    public void testBinaryChangedDataMatchesPlainText() throws Exception {
+        String plainDir = Files.createDirectories(tmpDir.resolve("plain")).toString();
+        String binaryDir = Files.createDirectories(tmpDir.resolve("binary")).toString();
+        Map<String, Set<String>> testDeps = new HashMap<>();
+        testDeps.put("TestA", deps("Writer", "Cache", "FileUtil"));
+        testDeps.put("TestB", deps("Writer", "PomUtil"));
+        testDeps.put("TestC", deps("Cache", "YasglHelper"));
+        Writer.writeToFile(ZLCHelper.createZLCData(testDeps, loader, false, ZLCFormat.PLAIN_TEXT),
+                ZLCHelper.zlcFile, plainDir);
+        Writer.writeToFile(ZLCHelper.createZLCData(testDeps, loader, false, ZLCFormat.BINARY),
+                ZLCHelper.zlcFile, binaryDir);
+        assertEquals(read(plainDir), read(binaryDir));
+        assertEquals(ZLCHelper.getExistingClasses(plainDir), ZLCHelper.getExistingClasses(binaryDir));
+
+        Path helpers = classesDir.resolve("edu/illinois/starts/helpers");
+        Files.delete(helpers.resolve("PomUtil.class"));
+        Pair<Set<String>, Set<String>> plain = ZLCHelper.getChangedData(plainDir, true);
+        Pair<Set<String>, Set<String>> binary = ZLCHelper.getChangedData(binaryDir, true);
+        assertEquals(new HashSet<>(Arrays.asList("TestA", "TestC")), binary.getKey());
+        assertEquals(plain.getKey(), binary.getKey());
+        assertEquals(plain.getValue(), binary.getValue());
+        for (String dir : Arrays.asList(plainDir, binaryDir)) {
+            Pair<Set<String>, Set<String>> parallel = ZLCHelper.getChangedData(dir, true, 4);
+            assertEquals(plain.getKey(), parallel.getKey());
+            assertEquals(plain.getValue(), parallel.getValue());
+        }
+    }
+
+    @Test
+    public void testChecksumCacheSkipsUnchangedFiles() throws Exception {
+        String artifactsDir = Files.createDirectories(tmpDir.resolve("cache")).toString();
+        Path helpers = classesDir.resolve("edu/illinois/starts/helpers");
+        // files modified just before they are hashed are never trusted, so pretend they were compiled earlier
+        FileTime compiled = FileTime.fromMillis(System.currentTimeMillis() - 3600000);
+        for (String klas : Arrays.asList("Writer", "Cache", "FileUtil")) {
+            Files.setLastModifiedTime(helpers.resolve(klas + ".class"), compiled);
+        }
+        Map<String, Set<String>> testDeps = new HashMap<>();
+        testDeps.put("TestA", deps("Writer", "FileUtil"));
+        testDeps.put("TestB", deps("Cache"));
+        ZLCHelper.updateZLCFile(testDeps, loader, artifactsDir, new HashSet<>(), false, ZLCFormat.PLAIN_TEXT,
+                new HashSet<>());
+        assertTrue(new File(artifactsDir, CheckSumCache.CHECKSUM_CACHE_FILE).exists());
+
+        // the cached checksum of an unchanged file is returned without hashing it
+        String writerUrl = helpers.resolve("Writer.class").toUri().toURL().toExternalForm();
+        CheckSumCache cache = CheckSumCache.load(artifactsDir, true);
+        String checksum = cache.getCheckSum(writerUrl, url -> {
+            throw new AssertionError("Re-hashed unchanged " + url);
+        });
+        assertEquals(read(artifactsDir).get(writerUrl).getKey(), checksum);
+        assertEquals(1, cache.getHits());
+
+        // a new timestamp alone is hashed again but is not a change; new content with the old timestamp is
+        Files.setLastModifiedTime(helpers.resolve("Writer.class"), FileTime.fromMillis(compiled.toMillis() + 1000));
+        Files.copy(helpers.resolve("FileUtil.class"), helpers.resolve("Cache.class"),
+                StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(helpers.resolve("Cache.class"), compiled);
+        Pair<Set<String>, Set<String>> changedData = ZLCHelper.getChangedData(artifactsDir, true);
+        assertEquals(Collections.singleton("TestA"), changedData.getKey());
+        assertEquals(1, changedData.getValue().size());
+        assertTrue(changedData.getValue().iterator().next().endsWith("Cache.class"));
+
+        // without cleanBytes, finding the changes does not throw away the checksums of the update, and the
+        // other way around
+        ZLCHelper.getChangedData(artifactsDir, false);
+        ZLCHelper.updateZLCFile(testDeps, loader, artifactsDir, new HashSet<>(), false, ZLCFormat.PLAIN_TEXT,
+                new HashSet<>());
+        assertTrue(new File(artifactsDir, CheckSumCache.getFileName(false)).exists());
+        cache = CheckSumCache.load(artifactsDir, false);
+        cache.getCheckSum(writerUrl, url -> {
+            throw new AssertionError("Re-hashed unchanged " + url);
+        });
+        cache = CheckSumCache.load(artifactsDir, true);
+        cache.getCheckSum(writerUrl, url -> {
+            throw new AssertionError("Re-hashed unchanged " + url);
+        });
+
+        // the checksums of classes that no test depends on any more are dropped
+        testDeps.remove("TestA");
+        ZLCHelper.updateZLCFile(testDeps, loader, artifactsDir, new HashSet<>(), false, ZLCFormat.PLAIN_TEXT,
+                new HashSet<>());
+        cache = CheckSumCache.load(artifactsDir, true);
+        assertEquals("dropped", cache.getCheckSum(writerUrl, url -> "dropped"));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testGraphFormatMatchesZLC() throws Exception {
+        String zlcDir = Files.createDirectories(tmpDir.resolve("zlc")).toString();
+        String graphDir = Files.createDirectories(tmpDir.resolve("graph")).toString();
+        DependencyGraph graph = new DependencyGraph.Builder().addEdge("TestA", PKG + "Writer")
+                .addEdge("TestA", PKG + "Cache").addEdge(PKG + "Cache", PKG + "FileUtil")
+                .addEdge("TestB", PKG + "PomUtil").addEdge("TestC", PKG + "YasglHelper")
+                .addEdge(PKG + "YasglHelper", PKG + "FileUtil").build();
+        List<String> tests = Arrays.asList("TestA", "TestB", "TestC", "TestD");
+        ZLCHelper.updateZLCFile(TransitiveClosure.compute(graph, tests), loader, zlcDir, new HashSet<>(), false,
+                ZLCFormat.PLAIN_TEXT, new HashSet<>());
+        GraphHelper.updateGraphFile(graph, tests, loader, graphDir, false);
+        // deps.graph is published by a rename, so no temp file is left behind
+        try (Stream<Path> files = Files.list(Paths.get(graphDir))) {
+            assertEquals(Collections.singletonList(GraphHelper.GRAPH_DEPS_FILE), files.map(file -> file.getFileName()
+                    .toString()).filter(name -> !name.startsWith(CheckSumCache.CHECKSUM_CACHE_FILE))
+                    .collect(Collectors.toList()));
+        }
+        // TestD has no dependencies, so it is always affected, like in deps.zlc
+        Pair<Set<String>, Set<String>> unchanged = GraphHelper.getChangedData(graphDir, true, 1);
+        assertEquals(new HashSet<>(Arrays.asList("TestA", "TestB", "TestC")), unchanged.getKey());
+        assertEquals(unchanged.getKey(), ZLCHelper.getChangedData(zlcDir, true).getKey());
+        assertTrue(unchanged.getValue().isEmpty());
+
+        // Cache changes and PomUtil is deleted; FileUtil is shared by TestA and TestC but did not change
+        Path helpers = classesDir.resolve("edu/illinois/starts/helpers");
+        Files.copy(helpers.resolve("Writer.class"), helpers.resolve("Cache.class"),
+                StandardCopyOption.REPLACE_EXISTING);
+        Files.delete(helpers.resolve("PomUtil.class"));
+        Pair<Set<String>, Set<String>> zlc = ZLCHelper.getChangedData(zlcDir, true);
+        Pair<Set<String>, Set<String>> graphData = GraphHelper.getChangedData(graphDir, true, 1);
+        assertEquals(Collections.singleton("TestC"), graphData.getKey());
+        assertEquals(zlc.getValue(), graphData.getValue());
+        assertEquals(zlc.getKey(), graphData.getKey());
+    }
+
+    @Test
+    public void testUpgradedJarOnlyAffectsTestsOfChangedClasses() throws Exception {
+        // in the new version of the jar, Writer is the same, Cache changed, and FileUtil was removed
+        Path helpers = classesDir.resolve("edu/illinois/starts/helpers");
+        Map<String, Path> oldEntries = new HashMap<>();
+        for (String klas : Arrays.asList("Writer", "Cache", "FileUtil")) {
+            oldEntries.put(klas, helpers.resolve(klas + ".class"));
+        }
+        Map<String, Path> newEntries = new HashMap<>();
+        newEntries.put("Writer", helpers.resolve("Writer.class"));
+        newEntries.put("Cache", helpers.resolve("PomUtil.class"));
+        Path oldJar = makeJar(tmpDir.resolve("lib-1.0.jar"), oldEntries);
+        Path newJar = makeJar(tmpDir.resolve("lib-2.0.jar"), newEntries);
+        ClassLoader oldLoader = new URLClassLoader(new URL[] {oldJar.toUri().toURL()}, null);
+        JarRelocator relocator = new JarRelocator(new URLClassLoader(new URL[] {newJar.toUri().toURL()}, null));
+
+        Map<String, Set<String>> testDeps = new HashMap<>();
+        testDeps.put("TestA", deps("Writer"));
+        testDeps.put("TestB", deps("Writer", "Cache"));
+        testDeps.put("TestC", deps("FileUtil"));
+        for (ZLCFormat format : Arrays.asList(ZLCFormat.PLAIN_TEXT, ZLCFormat.BINARY)) {
+            String artifactsDir = Files.createDirectories(tmpDir.resolve(format.name())).toString();
+            ZLCHelper.updateZLCFile(testDeps, oldLoader, artifactsDir, new HashSet<>(), true, format,
+                    new HashSet<>());
+            // the old jar is still where it was, so without relocation nothing changed
+            assertEquals(testDeps.keySet(), ZLCHelper.getChangedData(artifactsDir, true).getKey());
+            Pair<Set<String>, Set<String>> changedData = ZLCHelper.getChangedData(artifactsDir, true, 1, relocator);
+            assertEquals(format.name(), Collections.singleton("TestA"), changedData.getKey());
+            assertEquals(2, changedData.getValue().size());
+        }
+    }
+
+    private static Path makeJar(Path jarPath, Map<String, Path> entries) throws Exception {
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(jarPath))) {
+            for (Map.Entry<String, Path> entry : entries.entrySet()) {
+                jar.putNextEntry(new JarEntry("edu/illinois/starts/helpers/" + entry.getKey() + ".class"));
+                jar.write(Files.readAllBytes(entry.getValue()));
+                jar.closeEntry();
+            }
+        }
+        return jarPath;
+    }
+
+    @Test
+    public void testInvertTestDeps() {
+        List<String> testList = Arrays.asList("TestA", "TestB", "TestC");
+        Map<String, Set<String>> testDeps = new HashMap<>();
+        testDeps.put("TestA", new HashSet<>(Arrays.asList("A", "X")));
+        testDeps.put("TestB", new HashSet<>(Arrays.asList("B", "X")));
+        testDeps.put("TestC", new HashSet<>(Collections.singletonList("C")));
+        Map<String, BitSet> depToTests = ZLCHelper.invertTestDeps(testList, testDeps);
+        assertEquals(new HashSet<>(Arrays.asList("A", "B", "C", "X")), depToTests.keySet());
+        assertEquals(new HashSet<>(Arrays.asList("TestA", "TestB")),
+                ZLCHelper.toTestNames(depToTests.get("X"), testList));
+        assertEquals(Collections.singleton("TestC"), ZLCHelper.toTestNames(depToTests.get("C"), testList));
+    }
+
+    private void checkIncrementalMatchesFullRegeneration(ZLCFormat format) throws Exception {
+        String incrementalDir = Files.createDirectories(tmpDir.resolve("incremental")).toString();
+        String fullDir = Files.createDirectories(tmpDir.resolve("full")).toString();
+
+        Map<String, Set<String>> testDeps = new HashMap<>();
+        testDeps.put("TestA", deps("Writer", "Cache", "FileUtil"));
+        testDeps.put("TestB", deps("Writer", "PomUtil"));
+        testDeps.put("TestC", deps("Cache", "YasglHelper"));
+        testDeps.put("TestD", deps("EkstaziHelper"));
+        ZLCHelper.updateZLCFile(testDeps, loader, incrementalDir, new HashSet<>(), false, format,
+                new HashSet<>());
+
+        // Cache changes, TestD is deleted, TestE is added, and the changed TestC now also reaches RTSUtil
+        Path helpers = classesDir.resolve("edu/illinois/starts/helpers");
+        Files.copy(helpers.resolve("Writer.class"), helpers.resolve("Cache.class"),
+                StandardCopyOption.REPLACE_EXISTING);
+        Pair<Set<String>, Set<String>> changedData = ZLCHelper.getChangedData(incrementalDir, true);
+        Set<String> nonAffected = changedData.getKey();
+        assertEquals(new HashSet<>(Arrays.asList("TestB", "TestD")), nonAffected);
+        testDeps.remove("TestD");
+        testDeps.put("TestC", deps("Cache", "YasglHelper", "RTSUtil"));
+        testDeps.put("TestE", deps("PomUtil", "Loadables"));
+
+        ZLCHelper.updateZLCFile(testDeps, loader, incrementalDir, new HashSet<>(), false, format, nonAffected);
+        Writer.writeToFile(ZLCHelper.createZLCData(testDeps, loader, false, format), ZLCHelper.zlcFile, fullDir);
+
+        Map<String, Pair<String, Set<String>>> incremental = read(incrementalDir);
+        Map<String, Pair<String, Set<String>>> full = read(fullDir);
+        assertEquals(full.keySet(), incremental.keySet());
+        for (String url : full.keySet()) {
+            assertEquals(url, full.get(url).getKey(), incremental.get(url).getKey());
+            assertEquals(url, full.get(url).getValue(), incremental.get(url).getValue());
+        }
+        assertTrue(full.keySet().stream().noneMatch(url -> url.endsWith("EkstaziHelper.class")));
+    }
+
+    private static Set<String> deps(String... classes) {
+        List<String> names = Arrays.stream(classes).map(klas -> PKG + klas).collect(Collectors.toList());
+        return new HashSet<>(names);
+    }
+
+    private static Map<String, Pair<String, Set<String>>> read(String artifactsDir) throws Exception {
+        List<String> testList = new ArrayList<>();
+        Map<String, Pair<String, BitSet>> zlcData = ZLCHelper.readZLCData(
+                new File(artifactsDir, ZLCHelper.zlcFile), new HashSet<>(), testList);
+        Map<String, Pair<String, Set<String>>> rows = new HashMap<>();
+        for (Map.Entry<String, Pair<String, BitSet>> entry : zlcData.entrySet()) {
+            rows.put(entry.getKey(), new Pair<>(entry.getValue().getKey(),
+                    ZLCHelper.toTestNames(entry.getValue().getValue(), testList)));
+        }
+        return rows;
+    }
+
+    @Test
+    public void testBinaryRowsUseSmallerEncoding() throws Exception {
+        String binaryDir = Files.createDirectories(tmpDir.resolve("binary")).toString();
+        // TestN depends on Writer only for even N, so the Writer row is dense and the Cache row is sparse
+        Map<String, Set<String>> testDeps = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            testDeps.put("Test" + i, i % 2 == 0 ? deps("Writer") : deps("FileUtil"));
+        }
+        testDeps.put("Test1", deps("FileUtil", "Cache"));
+        Writer.writeToFile(ZLCHelper.createZLCData(testDeps, loader, false, ZLCFormat.BINARY),
+                ZLCHelper.zlcFile, binaryDir);
+        Map<String, Pair<String, Set<String>>> rows = read(binaryDir);
+        for (Map.Entry<String, Pair<String, Set<String>>> entry : rows.entrySet()) {
+            String klas = entry.getKey().substring(entry.getKey().lastIndexOf('/') + 1).replace(".class", "");
+            Set<String> expected = testDeps.keySet().stream().filter(test -> testDeps.get(test).contains(PKG + klas))
+                    .collect(Collectors.toSet());
+            assertEquals(klas, expected, entry.getValue().getValue());
+        }
+        assertEquals(3, rows.size());
+    }
+
+    @Test
+    public void testBinaryFileCanBeRewrittenWhileOpen() throws Exception {
+        String binaryDir = Files.createDirectories(tmpDir.resolve("binary")).toString();
+        File zlc = new File(binaryDir, ZLCHelper.zlcFile);
+        Map<String, Set<String>> testDeps = new HashMap<>();
+        testDeps.put("TestA", deps("Writer", "Cache"));
+        Writer.writeToFile(ZLCHelper.createZLCData(testDeps, loader, false, ZLCFormat.BINARY),
+                ZLCHelper.zlcFile, binaryDir);
+        ZLCBinaryFile open = new ZLCBinaryFile(zlc);
+        assertEquals(2, open.getRowsCount());
+
+        // the incremental update reads deps.zlc and then overwrites it in the same JVM
+        testDeps.put("TestB", deps("FileUtil"));
+        Writer.writeToFile(ZLCHelper.createZLCData(testDeps, loader, false, ZLCFormat.BINARY),
+                ZLCHelper.zlcFile, binaryDir);
+        ZLCBinaryFile rewritten = new ZLCBinaryFile(zlc);
+        assertEquals(3, rewritten.getRowsCount());
+        assertEquals(2, rewritten.getTestsCount());
+        Map<String, Pair<String, Set<String>>> rows = read(binaryDir);
+        assertEquals(Collections.singleton("TestB"), rows.get(classesDir.resolve(
+                "edu/illinois/starts/helpers/FileUtil.class").toUri().toURL().toExternalForm()).getValue());
+
+        // the file that was read first still answers from its own copy
+        open.nextRow();
+        assertEquals(1, open.getRowTestsCount());
+        assertEquals("TestA", open.getTest(open.getRowTests()[0]));
+    }
+}
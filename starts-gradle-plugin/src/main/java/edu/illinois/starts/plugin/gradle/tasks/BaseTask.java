@@ -11,6 +11,7 @@ import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
 import edu.illinois.starts.data.ZLCFormat;
+import edu.illinois.starts.enums.DependencyExtractor;
 import edu.illinois.starts.enums.DependencyFormat;
 import edu.illinois.starts.helpers.Writer;
 import edu.illinois.starts.plugin.StartsPluginException;
@@ -34,7 +35,13 @@ public abstract class BaseTask extends DefaultTask implements StartsPluginGradle
     protected boolean useThirdParty = false;
     protected DependencyFormat depFormat = DependencyFormat.ZLC;
     protected ZLCFormat zlcFormat = ZLCFormat.PLAIN_TEXT;
+    protected DependencyExtractor depExtractor = DependencyExtractor.JDEPS;
+    protected int extractorThreads = 1;
+    protected boolean incrementalDeps = false;
+    protected int closureThreads = 1;
     protected String graphCache;
+    protected boolean sharedGraphCache = false;
+    protected long graphCacheMaxSize = 0;
     protected boolean printGraph = true;
     protected String graphFile = GRAPH;
     protected Level loggingLevel = Level.CONFIG;
@@ -118,6 +125,36 @@ public abstract class BaseTask extends DefaultTask implements StartsPluginGradle
         this.graphCache = graphCache;
     }
 
+    @Input
+    public boolean isSharedGraphCache() {
+        return this.sharedGraphCache;
+    }
+
+    @Option(
+            option = "sharedGraphCache",
+            description = "Set this to \"true\" to keep the jdeps graphs of third-party jars in a cache shared by " +
+                    "all projects of the user, in ~/.starts/jdeps-cache, where each graph is named after the " +
+                    "fingerprint of its jar. When \"true\", gCache is ignored."
+    )
+    public void setSharedGraphCache(String sharedGraphCache) {
+        this.sharedGraphCache = sharedGraphCache.equals(TRUE);
+    }
+
+    @Input
+    public long getGraphCacheMaxSize() {
+        return this.graphCacheMaxSize;
+    }
+
+    @Option(
+            option = "graphCacheMaxSize",
+            description = "Maximum size, in megabytes, of the jdeps graphs of third-party jars in the cache. When " +
+                    "the cache grows larger, the least recently used graphs are evicted. Set to \"0\" to never " +
+                    "evict graphs."
+    )
+    public void setGraphCacheMaxSize(String graphCacheMaxSize) {
+        this.graphCacheMaxSize = Long.parseLong(graphCacheMaxSize);
+    }
+
     @Input
     public boolean isPrintGraph() {
         return this.printGraph;
@@ -173,13 +210,76 @@ public abstract class BaseTask extends DefaultTask implements StartsPluginGradle
     @Option(
             option = "zlcFormat",
             description = "Format of the ZLC dependency file deps.zlc. " +
-                    "Set to \"INDEXED\" to store indices of tests. " +
-                    "Set to \"PLAIN_TEXT\" to store full URLs of tests."
+                    "Set to \"INDEXED\" to store indices of tests as text. " +
+                    "Set to \"PLAIN_TEXT\" to store full URLs of tests. " +
+                    "Set to \"BINARY\" to store indices or bitmaps of tests in a compact binary file whose strings are " +
+                    "decoded on demand."
     )
     public void setZlcFormat(String zlcFormat) {
         this.zlcFormat = ZLCFormat.valueOf(zlcFormat);
     }
 
+    @Input
+    public DependencyExtractor getDepExtractor() {
+        return this.depExtractor;
+    }
+
+    @Option(
+            option = "depExtractor",
+            description = "Tool used to extract class-level dependencies from bytecode. " +
+                    "Set to \"JDEPS\" to run jdeps and parse its textual output. " +
+                    "Set to \"ASM\" to read the constant pools of class files in-process."
+    )
+    public void setDepExtractor(String depExtractor) {
+        this.depExtractor = DependencyExtractor.valueOf(depExtractor);
+    }
+
+    @Input
+    public int getExtractorThreads() {
+        return this.extractorThreads;
+    }
+
+    @Option(
+            option = "extractorThreads",
+            description = "Number of threads with which the \"ASM\" dependency extractor scans class files, " +
+                    "and with which third-party jars that are missing from the jdeps cache are analyzed. " +
+                    "Set to a value greater than \"1\" to scan classpath directories and jars in parallel."
+    )
+    public void setExtractorThreads(String extractorThreads) {
+        this.extractorThreads = Integer.parseInt(extractorThreads);
+    }
+
+    @Input
+    public boolean isIncrementalDeps() {
+        return this.incrementalDeps;
+    }
+
+    @Option(
+            option = "incrementalDeps",
+            description = "Set this to \"true\" to store the dependencies of each class file between runs, and to " +
+                    "only re-extract the dependencies of class files that changed. Requires depExtractor == \"ASM\". " +
+                    "Only the extraction is saved: every run still lists all class files and rebuilds the " +
+                    "whole dependency graph."
+    )
+    public void setIncrementalDeps(String incrementalDeps) {
+        this.incrementalDeps = incrementalDeps.equals(TRUE);
+    }
+
+    @Input
+    public int getClosureThreads() {
+        return this.closureThreads;
+    }
+
+    @Option(
+            option = "closureThreads",
+            description = "Number of threads with which the transitive closure of every test is computed. " +
+                    "Set to a value greater than \"1\" to compute the closures in parallel; fewer closures are " +
+                    "computed at once when they would not fit in the free heap."
+    )
+    public void setClosureThreads(String closureThreads) {
+        this.closureThreads = Integer.parseInt(closureThreads);
+    }
+
     public File getTestClassDir() {
         if (testClassDir == null) {
             testClassDir = StartsPluginGradleGoal.super.getTestClassDir();
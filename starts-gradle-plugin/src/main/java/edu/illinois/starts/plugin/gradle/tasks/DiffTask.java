@@ -2,6 +2,7 @@ package edu.illinois.starts.plugin.gradle.tasks;
 
 import edu.illinois.starts.plugin.StartsPluginException;
 import edu.illinois.starts.plugin.goals.StartsPluginDiffGoal;
+import edu.illinois.starts.util.ClassPathIndex;
 import edu.illinois.starts.util.Logger;
 import org.gradle.api.GradleException;
 import org.gradle.api.tasks.Input;
@@ -20,6 +21,10 @@ public class DiffTask extends BaseTask implements StartsPluginDiffGoal {
 
     protected boolean updateDiffChecksums = false;
 
+    protected int diffThreads = 1;
+
+    private ClassPathIndex classPathIndex;
+
     @Input
     public boolean isCleanBytes() {
         return this.cleanBytes;
@@ -50,11 +55,35 @@ public class DiffTask extends BaseTask implements StartsPluginDiffGoal {
         this.updateDiffChecksums = updateDiffChecksums.equals(TRUE);
     }
 
+    @Input
+    public int getDiffThreads() {
+        return this.diffThreads;
+    }
+
+    @Option(
+            option = "diffThreads",
+            description = "The number of threads on which to recompute the checksums of the classes in deps.zlc " +
+                    "when looking for changes, to fingerprint the jars on the classpath, and to compute the " +
+                    "checksums of the affected tests in the CLZ format. The changes that are found do not depend " +
+                    "on this number."
+    )
+    public void setDiffThreads(String diffThreads) {
+        this.diffThreads = Integer.parseInt(diffThreads);
+    }
+
     @Internal
     public ClassLoader getClassLoader() {
         return createClassLoader(testClassPathElements);
     }
 
+    @Internal
+    public ClassPathIndex getClassPathIndex() {
+        if (classPathIndex == null) {
+            classPathIndex = ClassPathIndex.create(getClassLoader());
+        }
+        return classPathIndex;
+    }
+
     @TaskAction
     public void execute() {
         try {
@@ -28,6 +28,7 @@ public class RunTask extends DiffTask implements StartsPluginRunGoal {
 
     protected boolean updateRunChecksums = true;
     protected boolean retestAll = false;
+    protected boolean fullJarChecksums = false;
     protected boolean writeNonAffected = false;
     protected boolean writeChangedClasses = false;
     @Internal
@@ -70,6 +71,21 @@ public class RunTask extends DiffTask implements StartsPluginRunGoal {
         this.retestAll = retestAll.equals(TRUE);
     }
 
+    @Input
+    public boolean isFullJarChecksums() {
+        return this.fullJarChecksums;
+    }
+
+    @Option(
+            option = "fullJarChecksums",
+            description = "Set this option to \"true\" to hash every jar on the classpath in full to find out if it " +
+                    "changed. By default, a jar whose size and modification time are unchanged is not read, and " +
+                    "only the central directory of any other jar is hashed."
+    )
+    public void setFullJarChecksums(String fullJarChecksums) {
+        this.fullJarChecksums = fullJarChecksums.equals(TRUE);
+    }
+
     @Input
     public boolean getWriteNonAffected() {
         return this.writeNonAffected;
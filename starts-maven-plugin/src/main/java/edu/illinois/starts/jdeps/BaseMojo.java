@@ -12,6 +12,7 @@ import java.util.logging.Level;
 
 import edu.illinois.starts.constants.StartsConstants;
 import edu.illinois.starts.data.ZLCFormat;
+import edu.illinois.starts.enums.DependencyExtractor;
 import edu.illinois.starts.enums.DependencyFormat;
 import edu.illinois.starts.helpers.Writer;
 import edu.illinois.starts.plugin.StartsPluginException;
@@ -66,6 +67,23 @@ public abstract class BaseMojo extends SurefirePlugin implements StartsPluginMav
     @Getter
     protected String graphCache;
 
+    /**
+     * Set this to "true" to keep the jdeps graphs of third-party jars in a cache shared by all projects of the
+     * user, in ~/.starts/jdeps-cache, where each graph is named after the fingerprint of its jar. Each jar is then
+     * analyzed once per machine instead of once per module. When "true", gCache is ignored.
+     */
+    @Parameter(property = "sharedGraphCache", defaultValue = FALSE)
+    @Getter
+    protected boolean sharedGraphCache;
+
+    /**
+     * Maximum size, in megabytes, of the jdeps graphs of third-party jars in the cache. When the cache grows
+     * larger, the least recently used graphs are evicted. Set to "0" to never evict graphs.
+     */
+    @Parameter(property = "graphCacheMaxSize", defaultValue = "0")
+    @Getter
+    protected long graphCacheMaxSize;
+
     /**
      * Set this to "false" to not print the graph obtained from jdeps parsing.
      * When "true" the graph is written to file after the run.
@@ -89,13 +107,51 @@ public abstract class BaseMojo extends SurefirePlugin implements StartsPluginMav
 
     /**
      * Format of the ZLC dependency file deps.zlc
-     * Set to "INDEXED" to store indices of tests
+     * Set to "INDEXED" to store indices of tests as text
      * Set to "PLAIN_TEXT" to store full URLs of tests
+     * Set to "BINARY" to store indices or bitmaps of tests in a compact binary file whose strings are decoded
+     * on demand
      */
     @Parameter(property = "zlcFormat", defaultValue = "PLAIN_TEXT")
     @Getter
     protected ZLCFormat zlcFormat;
 
+    /**
+     * Tool used to extract class-level dependencies from bytecode.
+     * Set to "JDEPS" to run jdeps and parse its textual output
+     * Set to "ASM" to read the constant pools of class files in-process
+     */
+    @Parameter(property = "depExtractor", defaultValue = "JDEPS")
+    @Getter
+    protected DependencyExtractor depExtractor;
+
+    /**
+     * Number of threads with which the "ASM" dependency extractor scans class files, and with which
+     * third-party jars that are missing from the jdeps cache are analyzed.
+     * Set to a value greater than "1" to scan classpath directories and jars in parallel.
+     */
+    @Parameter(property = "extractorThreads", defaultValue = "1")
+    @Getter
+    protected int extractorThreads;
+
+    /**
+     * Set this to "true" to store the dependencies of each class file between runs, and to only
+     * re-extract the dependencies of class files that changed. Requires depExtractor == "ASM". Only the
+     * extraction is saved: every run still lists all class files and rebuilds the whole dependency graph.
+     */
+    @Parameter(property = "incrementalDeps", defaultValue = FALSE)
+    @Getter
+    protected boolean incrementalDeps;
+
+    /**
+     * Number of threads with which the transitive closure of every test is computed.
+     * Set to a value greater than "1" to compute the closures in parallel; fewer closures are computed
+     * at once when they would not fit in the free heap.
+     */
+    @Parameter(property = "closureThreads", defaultValue = "1")
+    @Getter
+    protected int closureThreads;
+
     protected Classpath sureFireClassPath;
 
     public String getArtifactsDir() throws StartsPluginException {
@@ -8,6 +8,7 @@ import java.util.logging.Level;
 
 import edu.illinois.starts.plugin.StartsPluginException;
 import edu.illinois.starts.plugin.goals.StartsPluginDiffGoal;
+import edu.illinois.starts.util.ClassPathIndex;
 import edu.illinois.starts.util.Logger;
 import lombok.Getter;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -42,6 +43,17 @@ public class DiffMojo extends BaseMojo implements StartsPluginDiffGoal {
     @Getter
     private boolean updateDiffChecksums;
 
+    /**
+     * The number of threads on which to recompute the checksums of the classes in deps.zlc when
+     * looking for changes, to fingerprint the jars on the classpath, and to compute the checksums of
+     * the affected tests in the CLZ format. The changes that are found do not depend on this number.
+     */
+    @Parameter(property = "diffThreads", defaultValue = "1")
+    @Getter
+    protected int diffThreads;
+
+    private ClassPathIndex classPathIndex;
+
     public void execute() throws MojoExecutionException {
         try {
             Logger.getGlobal().setLoggingLevel(Level.parse(loggingLevel));
@@ -55,6 +67,13 @@ public class DiffMojo extends BaseMojo implements StartsPluginDiffGoal {
         return createClassLoader(sureFireClassPath);
     }
 
+    public ClassPathIndex getClassPathIndex() {
+        if (classPathIndex == null) {
+            classPathIndex = ClassPathIndex.create(getClassLoader());
+        }
+        return classPathIndex;
+    }
+
     @Override
     public void setIncludesExcludes() throws StartsPluginException {
         super.setIncludesExcludes();
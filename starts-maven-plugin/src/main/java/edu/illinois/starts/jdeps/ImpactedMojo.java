@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 
+import edu.illinois.starts.data.DependencyGraph;
 import edu.illinois.starts.helpers.RTSUtil;
 import edu.illinois.starts.helpers.Writer;
 import edu.illinois.starts.helpers.ZLCHelper;
@@ -16,7 +17,6 @@ import edu.illinois.starts.plugin.StartsPluginException;
 import edu.illinois.starts.util.Logger;
 import edu.illinois.starts.util.Pair;
 import edu.illinois.starts.util.Result;
-import edu.illinois.yasgl.DirectedGraph;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.surefire.util.DirectoryScanner;
 import org.apache.maven.plugins.annotations.Execute;
@@ -95,7 +95,7 @@ public class ImpactedMojo extends DiffMojo {
             }
             // 3. Optionally update ZLC file for next run, using all classes in the SUT
             if (updateImpactedChecksums) {
-                updateForNextRun(allClasses);
+                updateForNextRun(allClasses, nonAffected);
             }
             // 4. Print impacted and/or write to file
             Writer.writeToFile(changed, CHANGED_CLASSES, getArtifactsDir());
@@ -115,15 +115,14 @@ public class ImpactedMojo extends DiffMojo {
         return scanResult.getFiles();
     }
 
-    private void updateForNextRun(List<String> allClasses) throws StartsPluginException {
+    private void updateForNextRun(List<String> allClasses, Set<String> nonAffected) throws StartsPluginException {
         long start = System.currentTimeMillis();
         Classpath sfClassPath = getSureFireClassPath();
         String sfPathString = Writer.pathToString(sfClassPath.getClassPath());
-        ClassLoader loader = createClassLoader(sfClassPath);
         Result result = prepareForNextRun(sfPathString, sfClassPath.getClassPath(), allClasses, new HashSet<>(), false);
         ZLCHelper zlcHelper = new ZLCHelper();
-        ZLCHelper.updateZLCFile(result.getTestDeps(), loader, getArtifactsDir(), new HashSet<>(), useThirdParty,
-                zlcFormat);
+        ZLCHelper.updateZLCFile(result.getTestDeps(), getClassPathIndex(), getArtifactsDir(), new HashSet<>(), useThirdParty,
+                zlcFormat, nonAffected);
         long end = System.currentTimeMillis();
         if (writePath || logger.getLoggingLevel().intValue() <= Level.FINER.intValue()) {
             Writer.writeClassPath(sfPathString, getArtifactsDir());
@@ -134,7 +133,7 @@ public class ImpactedMojo extends DiffMojo {
         Logger.getGlobal().log(Level.FINE, PROFILE_UPDATE_FOR_NEXT_RUN_TOTAL + Writer.millsToSeconds(end - start));
     }
 
-    private void save(String artifactsDir, DirectedGraph<String> graph) {
+    private void save(String artifactsDir, DependencyGraph graph) {
         RTSUtil.saveForNextRun(artifactsDir, graph, printGraph, graphFile);
     }
 }
@@ -52,6 +52,15 @@ public class RunMojo extends DiffMojo implements StartsPluginRunGoal {
     @Getter
     protected boolean retestAll;
 
+    /**
+     * Set this option to "true" to hash every jar on the classpath in full to find out if it changed.
+     * By default, a jar whose size and modification time are unchanged is not read, and only the
+     * central directory of any other jar is hashed.
+     */
+    @Parameter(property = "fullJarChecksums", defaultValue = FALSE)
+    @Getter
+    protected boolean fullJarChecksums;
+
     /**
      * Set this to "true" to save nonAffectedTests to a file on disk. This improves the time for
      * updating test dependencies in offline mode by not running computeChangeData() twice.
@@ -9,8 +9,10 @@ import java.util.Set;
 import java.util.logging.Level;
 
 import edu.illinois.starts.data.ZLCFormat;
+import edu.illinois.starts.enums.DependencyExtractor;
 import edu.illinois.starts.enums.DependencyFormat;
 import edu.illinois.starts.helpers.Cache;
+import edu.illinois.starts.helpers.JarGraphFile;
 import edu.illinois.starts.helpers.Loadables;
 import edu.illinois.starts.helpers.RTSUtil;
 import edu.illinois.starts.helpers.Writer;
@@ -26,12 +28,24 @@ public interface StartsPluginBaseGoal {
 
     String getGraphCache();
 
+    boolean isSharedGraphCache();
+
+    long getGraphCacheMaxSize();
+
     boolean isUseThirdParty();
 
     boolean isFilterLib();
 
     DependencyFormat getDepFormat();
 
+    DependencyExtractor getDepExtractor();
+
+    int getExtractorThreads();
+
+    boolean isIncrementalDeps();
+
+    int getClosureThreads();
+
     boolean isPrintGraph();
 
     String getGraphFile();
@@ -55,36 +69,41 @@ public interface StartsPluginBaseGoal {
             throws StartsPluginException {
         long start = System.currentTimeMillis();
         String m2Repo = getLocalRepositoryDir();
-        File jdepsCache = new File(getGraphCache());
+        File jdepsCache = isSharedGraphCache() ? Cache.getSharedCacheDir() : new File(getGraphCache());
         // We store the jdk-graphs at the root of "jdepsCache" directory, with
         // jdk.graph being the file that merges all the graphs for all standard
         // library jars.
         File libraryFile = new File(jdepsCache, "jdk.graph");
         // Create the Loadables object early so we can use its helpers
         Loadables loadables = new Loadables(classesToAnalyze, getArtifactsDir(), testClassPathElementsString,
-                isUseThirdParty(), isFilterLib(), jdepsCache);
+                isUseThirdParty(), isFilterLib(), jdepsCache, getDepExtractor(), getExtractorThreads(),
+                isIncrementalDeps(), getClosureThreads());
         loadables.setTestClassPathElements(testClassPathElementsPaths);
 
         long loadMoreEdges = System.currentTimeMillis();
-        Cache cache = new Cache(jdepsCache, m2Repo);
+        Cache cache = new Cache(jdepsCache, m2Repo, isSharedGraphCache(), getDepExtractor(), getExtractorThreads());
+        cache.setMaxSize(getGraphCacheMaxSize());
         // 1. Load non-reflection edges from third-party libraries in the classpath
-        List<String> moreEdges = new ArrayList<>();
+        List<JarGraphFile> jarGraphs = new ArrayList<>();
         if (isUseThirdParty()) {
-            moreEdges = cache.loadM2EdgesFromCache(testClassPathElementsString);
+            jarGraphs = cache.loadM2GraphsFromCache(testClassPathElementsString);
         }
         long loadM2EdgesFromCache = System.currentTimeMillis();
         // 2. Get non-reflection edges from CUT and SDK; use (1) to build graph
-        loadables.create(new ArrayList<>(moreEdges), testClassPathElementsPaths, computeUnreached);
+        // The GRAPH format walks the graph backward from changed classes, so it needs no per-test closure
+        boolean computeClosure = getDepFormat() != DependencyFormat.GRAPH;
+        loadables.create(new ArrayList<>(), jarGraphs, testClassPathElementsPaths, computeUnreached,
+                computeClosure);
 
         Map<String, Set<String>> transitiveClosure = loadables.getTransitiveClosure();
         long createLoadables = System.currentTimeMillis();
 
-        // We don't need to compute affected tests this way with ZLC format.
+        // We don't need to compute affected tests this way with the ZLC and GRAPH formats.
         // In RTSUtil.computeAffectedTests(), we find affected tests by (a) removing nonAffected tests from the set of
         // all tests and then (b) adding all tests that reach to * as affected if there has been a change. This is only
         // for CLZ which does not encode information about *. ZLC already encodes and reasons about * when it finds
         // nonAffected tests.
-        Set<String> affected = getDepFormat() == DependencyFormat.ZLC ? null
+        Set<String> affected = getDepFormat() != DependencyFormat.CLZ ? null
                 : RTSUtil.computeAffectedTests(new HashSet<>(classesToAnalyze),
                 nonAffected, transitiveClosure);
         long end = System.currentTimeMillis();
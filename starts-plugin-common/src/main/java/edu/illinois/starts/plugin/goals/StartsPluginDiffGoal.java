@@ -12,24 +12,36 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 
+import edu.illinois.starts.data.DependencyGraph;
 import edu.illinois.starts.enums.DependencyFormat;
+import edu.illinois.starts.helpers.ClzStore;
 import edu.illinois.starts.helpers.EkstaziHelper;
+import edu.illinois.starts.helpers.GraphHelper;
+import edu.illinois.starts.helpers.JarRelocator;
 import edu.illinois.starts.helpers.RTSUtil;
 import edu.illinois.starts.helpers.Writer;
 import edu.illinois.starts.helpers.ZLCHelper;
 import edu.illinois.starts.plugin.StartsPluginException;
+import edu.illinois.starts.util.ClassPathIndex;
 import edu.illinois.starts.util.Logger;
 import edu.illinois.starts.util.Pair;
 import edu.illinois.starts.util.Result;
-import edu.illinois.yasgl.DirectedGraph;
 
 public interface StartsPluginDiffGoal extends StartsPluginBaseGoal {
     boolean isCleanBytes();
 
     boolean isUpdateDiffChecksums();
 
+    int getDiffThreads();
+
     ClassLoader getClassLoader();
 
+    /**
+     * The index of the classpath of getClassLoader(), built once per run and shared by finding the changes
+     * and by updating the dependencies for the next run, so that the classpath is only scanned once.
+     */
+    ClassPathIndex getClassPathIndex();
+
     List<String> getTestClasses(String updateForNextRun);
 
     default void setIncludesExcludes() throws StartsPluginException {}
@@ -40,7 +52,7 @@ public interface StartsPluginDiffGoal extends StartsPluginBaseGoal {
     }
 
     default void save(String artifactsDir, Set<String> affectedTests, List<String> testClasses,
-                      String sfPathString, DirectedGraph<String> graph) {
+                      String sfPathString, DependencyGraph graph) {
         int globalLogLevel = Logger.getGlobal().getLoggingLevel().intValue();
         if (globalLogLevel <= Level.FINER.intValue()) {
             Writer.writeToFile(testClasses, "all-tests", artifactsDir);
@@ -55,10 +67,17 @@ public interface StartsPluginDiffGoal extends StartsPluginBaseGoal {
     default Pair<Set<String>, Set<String>> computeChangeData(boolean writeChanged) throws StartsPluginException {
         long start = System.currentTimeMillis();
         Pair<Set<String>, Set<String>> data = null;
+        // classes in third-party jars are tracked by URL, so they are looked up on the current classpath in case
+        // their jar was upgraded or removed
+        JarRelocator relocator = isUseThirdParty() ? new JarRelocator(getClassPathIndex()) : null;
         if (getDepFormat() == DependencyFormat.ZLC) {
-            data = ZLCHelper.getChangedData(getArtifactsDir(), isCleanBytes());
+            data = ZLCHelper.getChangedData(getArtifactsDir(), isCleanBytes(), getDiffThreads(), relocator);
         } else if (getDepFormat() == DependencyFormat.CLZ) {
-            data = EkstaziHelper.getNonAffectedTests(getArtifactsDir());
+            // the .clz files of older versions are only checked until the store is first saved
+            data = ClzStore.exists(getArtifactsDir()) ? ClzStore.getChangedData(getArtifactsDir(), getDiffThreads())
+                    : EkstaziHelper.getNonAffectedTests(getArtifactsDir(), getDiffThreads());
+        } else if (getDepFormat() == DependencyFormat.GRAPH) {
+            data = GraphHelper.getChangedData(getArtifactsDir(), isCleanBytes(), getDiffThreads(), relocator);
         }
         Set<String> changed = data == null ? new HashSet<>() : data.getValue();
         if (writeChanged || Logger.getGlobal().getLoggingLevel().intValue() <= Level.FINEST.intValue()) {
@@ -94,9 +113,9 @@ public interface StartsPluginDiffGoal extends StartsPluginBaseGoal {
         List<String> allTests = getTestClasses("updateForNextRun");
         Set<String> affectedTests = new HashSet<>(allTests);
         affectedTests.removeAll(nonAffected);
-        DirectedGraph<String> graph = null;
+        DependencyGraph graph = null;
         if (!affectedTests.isEmpty()) {
-            ClassLoader loader = getClassLoader();
+            ClassPathIndex index = getClassPathIndex();
             //TODO: set this boolean to true only for static reflectionAnalyses with * (border, string, naive)?
             boolean computeUnreached = true;
             Result result = prepareForNextRun(testClassPathElementsString, testClassPathElementsPaths,
@@ -105,7 +124,8 @@ public interface StartsPluginDiffGoal extends StartsPluginBaseGoal {
             graph = result.getGraph();
             Set<String> unreached = computeUnreached ? result.getUnreachedDeps() : new HashSet<>();
             if (getDepFormat() == DependencyFormat.ZLC) {
-                ZLCHelper.updateZLCFile(testDeps, loader, getArtifactsDir(), unreached, isUseThirdParty(), getZlcFormat());
+                ZLCHelper.updateZLCFile(testDeps, index, getArtifactsDir(), unreached, isUseThirdParty(), getZlcFormat(),
+                        nonAffected);
             } else if (getDepFormat() == DependencyFormat.CLZ) {
                 // The next line is not needed with ZLC because '*' is explicitly tracked in ZLC
                 affectedTests = result.getAffectedTests();
@@ -113,10 +133,13 @@ public interface StartsPluginDiffGoal extends StartsPluginBaseGoal {
                     throw new StartsPluginException("Affected tests should not be null with CLZ format!");
                 }
                 try {
-                    RTSUtil.computeAndSaveNewCheckSums(getArtifactsDir(), affectedTests, testDeps, loader);
+                    RTSUtil.computeAndSaveNewCheckSums(getArtifactsDir(), affectedTests, testDeps, index,
+                            getDiffThreads());
                 } catch (IOException ioe) {
                     throw new StartsPluginException(ioe.getMessage(), ioe.getCause());
                 }
+            } else if (getDepFormat() == DependencyFormat.GRAPH) {
+                GraphHelper.updateGraphFile(graph, allTests, index, getArtifactsDir(), isUseThirdParty());
             }
         }
         save(getArtifactsDir(), affectedTests, allTests, testClassPathElementsString, graph);
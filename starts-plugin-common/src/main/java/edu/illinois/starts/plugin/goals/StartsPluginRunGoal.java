@@ -2,12 +2,14 @@ package edu.illinois.starts.plugin.goals;
 
 import static edu.illinois.starts.constants.StartsConstants.COMMA;
 import static edu.illinois.starts.constants.StartsConstants.JAR_CHECKSUMS;
+import static edu.illinois.starts.constants.StartsConstants.JAR_EXTENSION;
 import static edu.illinois.starts.constants.StartsConstants.PROFILE_STARTS_MOJO_UPDATE_TIME;
 import static edu.illinois.starts.constants.StartsConstants.SF_CLASSPATH;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -16,6 +18,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 
+import edu.illinois.starts.enums.DependencyFormat;
+import edu.illinois.starts.helpers.JarFingerprint;
 import edu.illinois.starts.helpers.Writer;
 import edu.illinois.starts.plugin.StartsPluginException;
 import edu.illinois.starts.util.Logger;
@@ -27,6 +31,8 @@ public interface StartsPluginRunGoal extends StartsPluginDiffGoal {
 
     boolean isRetestAll();
 
+    boolean isFullJarChecksums();
+
     Set<String> getNonAffectedTests();
 
     void setChangedAndNonaffected() throws StartsPluginException;
@@ -46,7 +52,21 @@ public interface StartsPluginRunGoal extends StartsPluginDiffGoal {
     default void run() throws StartsPluginException {
         String cpString = getTestClassPathElementsString();
         List<String> testDependencyElements = getCleanClassPath(cpString);
-        if (!isSameClassPath(testDependencyElements) || !hasSameJarChecksum(testDependencyElements)) {
+        // always fingerprint the jars, so that the next run can reuse the fingerprints of the unchanged jars
+        boolean sameJarChecksums = hasSameJarChecksum(testDependencyElements);
+        boolean sameJars = isSameClassPath(testDependencyElements) && sameJarChecksums;
+        if (!sameJars && canSelectByJarClasses(testDependencyElements)) {
+            // Only jars changed, and the dependencies track the jar classes that each test reaches, so only the
+            // tests that reach classes that changed in or disappeared from the jars are selected
+            Logger.getGlobal().log(Level.INFO, "Jars on the classpath changed; selecting tests by the jar classes "
+                    + "that they reach");
+            setChangedAndNonaffected();
+            List<String> excludePaths = isRetestAll() ? new ArrayList<>()
+                    : Writer.fqnsToExcludePath(getNonAffectedTests());
+            dynamicallyUpdateExcludes(excludePaths);
+            Writer.writeClassPath(cpString, getArtifactsDir());
+            Writer.writeJarChecksums(testDependencyElements, getArtifactsDir(), getJarCheckSums());
+        } else if (!sameJars) {
             // Force retestAll because classpath changed since last run
             // don't compute changed and non-affected classes
             dynamicallyUpdateExcludes(new ArrayList<>());
@@ -76,56 +96,105 @@ public interface StartsPluginRunGoal extends StartsPluginDiffGoal {
         if (sfPathString.isEmpty()) {
             return true;
         }
+        List<String> oldClassPathelements = getOldClassPath();
+        // comparing lists and not sets in case order changes
+        return sfPathString.equals(oldClassPathelements);
+    }
+
+    /**
+     * Get the clean classpath of the previous run, or null if it was not saved.
+     */
+    default List<String> getOldClassPath() throws StartsPluginException {
         String oldSfPathFileName = Paths.get(getArtifactsDir(), SF_CLASSPATH).toString();
         if (!new File(oldSfPathFileName).exists()) {
-            return false;
+            return null;
         }
         try {
             List<String> oldClassPathLines = Files.readAllLines(Paths.get(oldSfPathFileName));
             if (oldClassPathLines.size() != 1) {
                 throw new StartsPluginException(SF_CLASSPATH + " is corrupt! Expected only 1 line.");
             }
-            List<String> oldClassPathelements = getCleanClassPath(oldClassPathLines.get(0));
-            // comparing lists and not sets in case order changes
-            if (sfPathString.equals(oldClassPathelements)) {
-                return true;
-            }
+            return getCleanClassPath(oldClassPathLines.get(0));
         } catch (IOException ioe) {
             ioe.printStackTrace();
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * Check if the tests affected by a classpath change can be selected from the jar classes that they reach,
+     * instead of running all tests. This needs dependencies that track the classes in jars (useThirdParty with
+     * the ZLC or GRAPH format), and a change that only adds, removes, or replaces jars; the classes in
+     * directories are tracked by URL, so the directories on the classpath must stay the same.
+     */
+    default boolean canSelectByJarClasses(List<String> cleanSfClassPath) throws StartsPluginException {
+        if (!isUseThirdParty() || getDepFormat() == DependencyFormat.CLZ) {
+            return false;
+        }
+        List<String> oldClassPath = getOldClassPath();
+        if (oldClassPath == null) {
+            return false;
+        }
+        return getDirectories(oldClassPath).equals(getDirectories(cleanSfClassPath));
     }
 
+    default List<String> getDirectories(List<String> classPath) {
+        List<String> directories = new ArrayList<>();
+        for (String path : classPath) {
+            if (!path.endsWith(JAR_EXTENSION)) {
+                directories.add(path);
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Check if the jars on the classpath are the same as on the previous run, and set their fingerprints. If
+     * they are, but the size or modification time of some jar changed, the jar-checksums file is written
+     * again here, since run() only writes it when the jars changed.
+     *
+     * @see JarFingerprint
+     */
     default boolean hasSameJarChecksum(List<String> cleanSfClassPath) throws StartsPluginException {
         if (cleanSfClassPath.isEmpty()) {
             return true;
         }
-        String oldChecksumPathFileName = Paths.get(getArtifactsDir(), JAR_CHECKSUMS).toString();
-        if (!new File(oldChecksumPathFileName).exists()) {
-            return false;
-        }
+        long start = System.currentTimeMillis();
+        Path oldChecksumPath = Paths.get(getArtifactsDir(), JAR_CHECKSUMS);
         boolean noException = true;
         try {
-            List<String> lines = Files.readAllLines(Paths.get(oldChecksumPathFileName));
-            Map<String, String> checksumMap = new HashMap<>();
-            for (String line : lines) {
-                String[] elems = line.split(COMMA);
-                checksumMap.put(elems[0], elems[1]);
+            Map<String, String[]> oldLines = new HashMap<>();
+            if (Files.exists(oldChecksumPath)) {
+                for (String line : Files.readAllLines(oldChecksumPath)) {
+                    String[] elems = line.split(COMMA);
+                    oldLines.put(elems[0], elems);
+                }
+            } else {
+                noException = false;
             }
-            List<Pair<String, String>> jarCheckSums = new ArrayList<>();
-            for (String path : cleanSfClassPath) {
-                Pair<String, String> pair = Writer.getJarToChecksumMapping(path);
-                jarCheckSums.add(pair);
-                String oldCS = checksumMap.get(pair.getKey());
-                noException &= pair.getValue().equals(oldCS);
+            // all jars are fingerprinted even after a mismatch, because the fingerprints are written for the next run
+            List<Pair<String, String>> jarCheckSums = JarFingerprint.getFingerprints(cleanSfClassPath, oldLines,
+                    isFullJarChecksums(), getDiffThreads());
+            boolean newValues = false;
+            for (Pair<String, String> pair : jarCheckSums) {
+                String[] oldLine = oldLines.get(pair.getKey());
+                noException = noException && JarFingerprint.isUnchanged(pair.getKey(), oldLine, pair.getValue());
+                newValues |= JarFingerprint.isNewValue(oldLine, pair.getValue());
             }
             setJarCheckSums(jarCheckSums);
+            if (noException && newValues) {
+                // the jars are the same, but save their new size and modification time or fingerprint, so that
+                // the next run does not hash them again
+                Writer.writeJarChecksums(cleanSfClassPath, getArtifactsDir(), jarCheckSums);
+            }
         } catch (IOException ioe) {
             noException = false;
             // reset to null because we don't know what/when exception happened
             setJarCheckSums(null);
             ioe.printStackTrace();
         }
+        long end = System.currentTimeMillis();
+        Logger.getGlobal().log(Level.FINE, "[PROFILE] hasSameJarChecksum: " + Writer.millsToSeconds(end - start));
         return noException;
     }
 